@@ -0,0 +1,337 @@
+package cspSolver;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Generalized arc consistency for the all-different constraint, after Regin (1994).
+ *
+ * The variables and the values of their domains form a bipartite graph. The constraint
+ * is satisfiable iff a matching covers every variable, and a value can be kept in a
+ * domain iff its edge belongs to some such matching. With matched edges directed from
+ * variable to value and the other edges from value to variable, that is the case for
+ * matched edges, for edges inside a strongly connected component and for edges reachable
+ * from a free value.
+ *
+ * The matching is kept between calls. Only variables that lost their matched value are
+ * rematched, so after a single assignment the repair usually takes one augmenting path.
+ */
+class AllDifferentGAC {
+
+	//===============================================================================
+	// Properties
+	//===============================================================================
+
+	private final List<Variable> vars;
+	private final int k;
+	private int numValues;
+
+	//matching: value of each variable and variable of each value, 0 / -1 if unmatched
+	private int[] matchOfVar;
+	private int[] matchOfValue;
+	private int[] visited;
+	private int visitStamp;
+
+	//value -> variable edges in CSR layout, graph nodes are variables 0..k-1 then values
+	private int[] edgeStart;
+	private int[] edgeVars;
+	private int[] edgeFill;
+
+	//Tarjan's SCC state
+	private int[] order;
+	private int[] low;
+	private int[] component;
+	private boolean[] onStack;
+	private boolean[] reachable;
+	private int[] stack;
+	private int[] frameNode;
+	private int[] frameEdge;
+	private long[] prune;
+
+	//===============================================================================
+	// Constructors
+	//===============================================================================
+
+	AllDifferentGAC(Constraint c)
+	{
+		this.vars = c.vars;
+		this.k = vars.size();
+		this.matchOfVar = new int[k];
+	}
+
+	//===============================================================================
+	// Propagation
+	//===============================================================================
+
+	/**
+	 * Repairs the matching and removes the values that belong to no matching.
+	 * @return false if no matching covers every variable
+	 */
+	boolean propagate()
+	{
+		ensureCapacity();
+
+		//drop matched values that are no longer in the domains
+		for(int i = 0; i < k; i++)
+		{
+			int value = matchOfVar[i];
+			if(value != 0 && !vars.get(i).getDomain().contains(value))
+			{
+				matchOfValue[value] = -1;
+				matchOfVar[i] = 0;
+			}
+		}
+		for(int i = 0; i < k; i++)
+		{
+			if(matchOfVar[i] == 0)
+			{
+				visitStamp++;
+				if(!augment(i))
+				{
+					return false;
+				}
+			}
+		}
+
+		buildValueEdges();
+		findComponents();
+		markReachableFromFreeValues();
+
+		for(int i = 0; i < k; i++)
+		{
+			Variable var = vars.get(i);
+			Domain d = var.getDomain();
+			boolean any = false;
+			Arrays.fill(prune, 0);
+			for(int value = d.nextValue(0); value != 0; value = d.nextValue(value + 1))
+			{
+				int node = k + value - 1;
+				if(value != matchOfVar[i] && !reachable[node] && component[node] != component[i])
+				{
+					prune[value >>> 6] |= 1L << value;
+					any = true;
+				}
+			}
+			if(any)
+			{
+				var.removeValuesFromDomain(prune);
+			}
+		}
+		return true;
+	}
+
+	//===============================================================================
+	// Helper Methods
+	//===============================================================================
+
+	/**
+	 * Sizes the arrays for the largest value in the domains. Domains only shrink, so
+	 * this normally allocates on the first call only.
+	 */
+	private void ensureCapacity()
+	{
+		int maxValue = 0;
+		for(Variable var : vars)
+		{
+			maxValue = Math.max(maxValue, var.getDomain().getMaxValue());
+		}
+		if(matchOfValue != null && maxValue <= numValues)
+		{
+			return;
+		}
+		numValues = maxValue;
+		int nodes = k + numValues;
+		matchOfValue = new int[numValues + 1];
+		Arrays.fill(matchOfValue, -1);
+		Arrays.fill(matchOfVar, 0);
+		visited = new int[numValues + 1];
+		edgeStart = new int[numValues + 2];
+		edgeVars = new int[k * numValues];
+		edgeFill = new int[numValues + 1];
+		order = new int[nodes];
+		low = new int[nodes];
+		component = new int[nodes];
+		onStack = new boolean[nodes];
+		reachable = new boolean[nodes];
+		stack = new int[nodes];
+		frameNode = new int[nodes];
+		frameEdge = new int[nodes];
+		prune = new long[(numValues >>> 6) + 1];
+	}
+
+	/**
+	 * Looks for an augmenting path from an unmatched variable.
+	 * @return true if the variable could be matched
+	 */
+	private boolean augment(int i)
+	{
+		Domain d = vars.get(i).getDomain();
+		for(int value = d.nextValue(0); value != 0; value = d.nextValue(value + 1))
+		{
+			if(visited[value] == visitStamp)
+			{
+				continue;
+			}
+			visited[value] = visitStamp;
+			if(matchOfValue[value] < 0 || augment(matchOfValue[value]))
+			{
+				matchOfValue[value] = i;
+				matchOfVar[i] = value;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Collects the unmatched edges, directed from value to variable.
+	 */
+	private void buildValueEdges()
+	{
+		Arrays.fill(edgeStart, 0);
+		for(int i = 0; i < k; i++)
+		{
+			Domain d = vars.get(i).getDomain();
+			for(int value = d.nextValue(0); value != 0; value = d.nextValue(value + 1))
+			{
+				if(value != matchOfVar[i])
+				{
+					edgeStart[value + 1]++;
+				}
+			}
+		}
+		for(int value = 1; value <= numValues; value++)
+		{
+			edgeStart[value + 1] += edgeStart[value];
+		}
+		Arrays.fill(edgeFill, 0);
+		for(int i = 0; i < k; i++)
+		{
+			Domain d = vars.get(i).getDomain();
+			for(int value = d.nextValue(0); value != 0; value = d.nextValue(value + 1))
+			{
+				if(value != matchOfVar[i])
+				{
+					edgeVars[edgeStart[value] + edgeFill[value]++] = i;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the pos-th successor of a graph node, -1 if it has no more
+	 */
+	private int successor(int node, int pos)
+	{
+		if(node < k)
+		{
+			return pos == 0 ? k + matchOfVar[node] - 1 : -1;
+		}
+		int value = node - k + 1;
+		int e = edgeStart[value] + pos;
+		return e < edgeStart[value + 1] ? edgeVars[e] : -1;
+	}
+
+	/**
+	 * Tarjan's strongly connected components, iterative to keep the stack depth constant.
+	 */
+	private void findComponents()
+	{
+		int nodes = k + numValues;
+		Arrays.fill(order, -1);
+		Arrays.fill(onStack, false);
+		int counter = 0;
+		int sp = 0;
+		int numComponents = 0;
+		for(int start = 0; start < nodes; start++)
+		{
+			if(order[start] >= 0)
+			{
+				continue;
+			}
+			int frames = 0;
+			frameNode[frames] = start;
+			frameEdge[frames++] = -1;
+			while(frames > 0)
+			{
+				int top = frames - 1;
+				int node = frameNode[top];
+				if(frameEdge[top] < 0)
+				{
+					order[node] = low[node] = counter++;
+					stack[sp++] = node;
+					onStack[node] = true;
+					frameEdge[top] = 0;
+				}
+				int next = successor(node, frameEdge[top]++);
+				if(next >= 0)
+				{
+					if(order[next] < 0)
+					{
+						frameNode[frames] = next;
+						frameEdge[frames++] = -1;
+					}
+					else if(onStack[next])
+					{
+						low[node] = Math.min(low[node], order[next]);
+					}
+					continue;
+				}
+				if(low[node] == order[node])
+				{
+					int member;
+					do
+					{
+						member = stack[--sp];
+						onStack[member] = false;
+						component[member] = numComponents;
+					} while(member != node);
+					numComponents++;
+				}
+				frames--;
+				if(frames > 0)
+				{
+					int parent = frameNode[frames - 1];
+					low[parent] = Math.min(low[parent], low[node]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Marks the nodes reachable from an unmatched value, i.e. the ends of even
+	 * alternating paths starting at a free value.
+	 */
+	private void markReachableFromFreeValues()
+	{
+		Arrays.fill(reachable, false);
+		int head = 0;
+		int tail = 0;
+		for(int value = 1; value <= numValues; value++)
+		{
+			if(matchOfValue[value] < 0)
+			{
+				int node = k + value - 1;
+				reachable[node] = true;
+				stack[tail++] = node;
+			}
+		}
+		while(head < tail)
+		{
+			int node = stack[head++];
+			for(int pos = 0; ; pos++)
+			{
+				int next = successor(node, pos);
+				if(next < 0)
+				{
+					break;
+				}
+				if(!reachable[next])
+				{
+					reachable[next] = true;
+					stack[tail++] = next;
+				}
+			}
+		}
+	}
+}
@@ -1,424 +1,1243 @@
-package cspSolver;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
-
-import sudoku.Converter;
-import sudoku.SudokuFile;
-/**
- * Backtracking solver. 
- *
- */
-public class BTSolver implements Runnable{
-
-	//===============================================================================
-	// Properties
-	//===============================================================================
-
-	private ConstraintNetwork network;
-	private static Trail trail = Trail.getTrail();
-	private boolean hasSolution = false;
-	private SudokuFile sudokuGrid;
-
-	private int numAssignments;
-	private int numBacktracks;
-	private long startTime;
-	private long endTime;
-	
-	public enum VariableSelectionHeuristic 	{ None, MinimumRemainingValue, Degree };
-	public enum ValueSelectionHeuristic 		{ None, LeastConstrainingValue };
-	public enum ConsistencyCheck				{ None, ForwardChecking, ArcConsistency };
-        public enum NakedCheck    { None, NakedPairs, NakedTriples };
-	
-	private VariableSelectionHeuristic varHeuristics;
-	private ValueSelectionHeuristic valHeuristics;
-	private ConsistencyCheck cChecks;
-        private NakedCheck nCheck;
-	//===============================================================================
-	// Constructors
-	//===============================================================================
-
-	public BTSolver(SudokuFile sf)
-	{
-		this.network = Converter.SudokuFileToConstraintNetwork(sf);
-		this.sudokuGrid = sf;
-		numAssignments = 0;
-		numBacktracks = 0;
-	}
-
-	//===============================================================================
-	// Modifiers
-	//===============================================================================
-	
-	public void setVariableSelectionHeuristic(VariableSelectionHeuristic vsh)
-	{
-		this.varHeuristics = vsh;
-	}
-	
-	public void setValueSelectionHeuristic(ValueSelectionHeuristic vsh)
-	{
-		this.valHeuristics = vsh;
-	}
-	
-	public void setConsistencyChecks(ConsistencyCheck cc)
-	{
-		this.cChecks = cc;
-	}
-
-        public void setNakedConsistency(NakedCheck nck)
-        {
-                this.nCheck = nck;
-        }
-	//===============================================================================
-	// Accessors
-	//===============================================================================
-
-	/** 
-	 * @return true if a solution has been found, false otherwise. 
-	 */
-	public boolean hasSolution()
-	{
-		return hasSolution;
-	}
-
-	/**
-	 * @return solution if a solution has been found, otherwise returns the unsolved puzzle.
-	 */
-	public SudokuFile getSolution()
-	{
-		return sudokuGrid;
-	}
-
-	public void printSolverStats()
-	{
-		System.out.println("Time taken:" + (endTime-startTime) + " ms");
-		System.out.println("Number of assignments: " + numAssignments);
-		System.out.println("Number of backtracks: " + numBacktracks);
-	}
-
-	/**
-	 * 
-	 * @return time required for the solver to attain in seconds
-	 */
-	public long getTimeTaken()
-	{
-		return endTime-startTime;
-	}
-
-	public int getNumAssignments()
-	{
-		return numAssignments;
-	}
-
-	public int getNumBacktracks()
-	{
-		return numBacktracks;
-	}
-
-	public ConstraintNetwork getNetwork()
-	{
-		return network;
-	}
-
-	//===============================================================================
-	// Helper Methods
-	//===============================================================================
-
-	/**
-	 * Checks whether the changes from the last time this method was called are consistent. 
-	 * @return true if consistent, false otherwise
-	 */
-	private boolean checkConsistency()
-	{
-		boolean isConsistent = false;
-		switch(cChecks)
-		{
-		case None: 				isConsistent = assignmentsCheck();
-		break;
-		case ForwardChecking: 	isConsistent = forwardChecking();
-		break;
-		case ArcConsistency: 	isConsistent = arcConsistency();
-		break;
-		default: 				isConsistent = assignmentsCheck();
-		break;
-		}
-		return isConsistent;
-	}
-
-        /**
-	 * Checks whether the changes from the last time this method was called are consistent. 
-	 * @return true if consistent, false otherwise
-	 */
-	private boolean checkNakedConsistency()
-	{
-		boolean isConsistent = false;
-		switch(nCheck)
-		{
-		case None: 				isConsistent = true;
-		break;
-                case NakedPairs:    isConsistent = nakedPairs();
-                break;
-                case NakedTriples:    isConsistent = nakedTriples();
-                break;
-		default: 				isConsistent = true;
-		break;
-		}
-		return isConsistent;
-	}
-	
-	/**
-	 * default consistency check. Ensures no two variables are assigned to the same value.
-	 * @return true if consistent, false otherwise. 
-	 */
-	private boolean assignmentsCheck()
-	{
-		for(Variable v : network.getVariables())
-		{
-			if(v.isAssigned())
-			{
-				for(Variable vOther : network.getNeighborsOfVariable(v))
-				{
-					if (v.getAssignment() == vOther.getAssignment())
-					{
-						return false;
-					}
-				}
-			}
-		}
-		return true;
-	}
-	
-	/**
-	 * TODO: Implement forward checking. 
-	 */
-	private boolean forwardChecking()
-	{
-		return false;
-	}
-	
-	/**
-	 * TODO: Implement Maintaining Arc Consistency.
-	 */
-	private boolean arcConsistency()
-	{
-		return false;
-	}
-
-	/**
-	 * TODO: Implement naked pairs. 
-	 */
-	private boolean nakedPairs()
-	{
-		return false;
-	}
-	
-	/**
-	 * TODO: Implement naked triples.
-	 */
-	private boolean nakedTriples()
-	{
-		return false;
-	}
-
-	/**
-	 * Selects the next variable to check.
-	 * @return next variable to check. null if there are no more variables to check. 
-	 */
-	private Variable selectNextVariable()
-	{
-		Variable next = null;
-		switch(varHeuristics)
-		{
-		case None: 					next = getfirstUnassignedVariable();
-		break;
-		case MinimumRemainingValue: next = getMRV();
-		break;
-		case Degree:				next = getDegree();
-		break;
-		default:					next = getfirstUnassignedVariable();
-		break;
-		}
-		return next;
-	}
-	
-	/**
-	 * default next variable selection heuristic. Selects the first unassigned variable. 
-	 * @return first unassigned variable. null if no variables are unassigned. 
-	 */
-	private Variable getfirstUnassignedVariable()
-	{
-		for(Variable v : network.getVariables())
-		{
-			if(!v.isAssigned())
-			{
-				return v;
-			}
-		}
-		return null;
-	}
-
-	/**
-	 * TODO: Implement MRV heuristic
-	 * @return variable with minimum remaining values that isn't assigned, null if all variables are assigned. 
-	 */
-	private Variable getMRV()
-	{
-		return null;
-	}
-	
-	/**
-	 * TODO: Implement Degree heuristic
-	 * @return variable constrained by the most unassigned variables, null if all variables are assigned.
-	 */
-	private Variable getDegree()
-	{
-		return null;
-	}
-	
-	/**
-	 * Value Selection Heuristics. Orders the values in the domain of the variable 
-	 * passed as a parameter and returns them as a list.
-	 * @return List of values in the domain of a variable in a specified order. 
-	 */
-	public List<Integer> getNextValues(Variable v)
-	{
-		List<Integer> orderedValues;
-		switch(valHeuristics)
-		{
-		case None: 						orderedValues = getValuesInOrder(v);
-		break;
-		case LeastConstrainingValue: 	orderedValues = getValuesLCVOrder(v);
-		break;
-		default:						orderedValues = getValuesInOrder(v);
-		break;
-		}
-		return orderedValues;
-	}
-	
-	/**
-	 * Default value ordering. 
-	 * @param v Variable whose values need to be ordered
-	 * @return values ordered by lowest to highest. 
-	 */
-	public List<Integer> getValuesInOrder(Variable v)
-	{
-		List<Integer> values = v.getDomain().getValues();
-		
-		Comparator<Integer> valueComparator = new Comparator<Integer>(){
-
-			@Override
-			public int compare(Integer i1, Integer i2) {
-				return i1.compareTo(i2);
-			}
-		};
-		Collections.sort(values, valueComparator);
-		return values;
-	}
-	
-	/**
-	 * TODO: LCV heuristic
-	 */
-	public List<Integer> getValuesLCVOrder(Variable v)
-	{
-		return null;
-	}
-	/**
-	 * Called when solver finds a solution
-	 */
-	private void success()
-	{
-		hasSolution = true;
-		sudokuGrid = Converter.ConstraintNetworkToSudokuFile(network, sudokuGrid.getN(), sudokuGrid.getP(), sudokuGrid.getQ());
-	}
-
-	//===============================================================================
-	// Solver
-	//===============================================================================
-
-	/**
-	 * Method to start the solver
-	 */
-	public void solve()
-	{
-		startTime = System.currentTimeMillis();
-		try {
-			solve(0);
-		}catch (VariableSelectionException e)
-		{
-			System.out.println("error with variable selection heuristic.");
-		}
-		endTime = System.currentTimeMillis();
-		Trail.clearTrail();
-	}
-
-	/**
-	 * Solver
-	 * @param level How deep the solver is in its recursion. 
-	 * @throws VariableSelectionException 
-	 */
-
-	private void solve(int level) throws VariableSelectionException
-	{
-		if(!Thread.currentThread().isInterrupted())
-
-		{//Check if assignment is completed
-			if(hasSolution)
-			{
-				return;
-			}
-
-			//Select unassigned variable
-			Variable v = selectNextVariable();		
-
-			//check if the assignment is complete
-			if(v == null)
-			{
-				for(Variable var : network.getVariables())
-				{
-					if(!var.isAssigned())
-					{
-						throw new VariableSelectionException("Something happened with the variable selection heuristic");
-					}
-				}
-				success();
-				return;
-			}
-
-			//loop through the values of the variable being checked LCV
-
-			
-			for(Integer i : getNextValues(v))
-			{
-				trail.placeBreadCrumb();
-
-				//check a value
-				v.updateDomain(new Domain(i));
-				numAssignments++;
-				boolean isConsistent = checkConsistency() && checkNakedConsistency();
-				
-				//move to the next assignment
-				if(isConsistent)
-				{		
-					solve(level + 1);
-				}
-
-				//if this assignment failed at any stage, backtrack
-				if(!hasSolution)
-				{
-					trail.undo();
-					numBacktracks++;
-				}
-				
-				else
-				{
-					return;
-				}
-			}	
-		}	
-	}
-
-	@Override
-	public void run() {
-		solve();
-	}
-}
+package cspSolver;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import sudoku.Converter;
+import sudoku.SudokuFile;
+/**
+ * Backtracking solver. 
+ *
+ */
+public class BTSolver implements Runnable{
+
+	//===============================================================================
+	// Properties
+	//===============================================================================
+
+	private ConstraintNetwork network;
+	//kept across reset() and the networks it builds, so its stacks are reused
+	private final Trail trail = new Trail();
+	private boolean hasSolution = false;
+	private SudokuFile sudokuGrid;
+
+	private long solutionCount;
+	private long solutionLimit = 1;
+	private boolean countOnly;
+	private boolean searchDone;
+	private SolutionIterator.Handoff handoff;
+
+	private long deadline;
+	private long nodeBudget = Long.MAX_VALUE;
+	private volatile boolean cancelled;
+	private SolveOutcome stopOutcome;
+
+	private int numAssignments;
+	private int numBacktracks;
+	private volatile long startTime;
+	private volatile long endTime;
+
+	private int maxDepth;
+	private long numPropagations;
+	private long varSelectionTime;
+	private long valSelectionTime;
+	private long consistencyTime;
+	private long nakedConsistencyTime;
+	private int lastPropagated;
+
+	private List<SearchListener> listeners = new ArrayList<SearchListener>();
+	private PropagationEngine engine;
+
+	//decision stack of the search, kept between puzzles of the same shape. The ordered 
+	//values of frame i are valueSlab[valueOffset[i] .. valueOffset[i] + valueCount[i] - 1]
+	private Variable[] decisionVars;
+	private int[] valueSlab;
+	private int[] valueOffset;
+	private int[] valueCount;
+	private int[] decisionPos;
+	private boolean[] decisionAssigned;
+	private int[] decisionTrailSize;
+	private int[] lcvCounts;
+	
+	public enum VariableSelectionHeuristic 	{ None, MinimumRemainingValue, Degree };
+	public enum ValueSelectionHeuristic 		{ None, LeastConstrainingValue };
+	/**
+	 * AllDifferent reaches the same fixpoint as ArcConsistency with the linear bitmask 
+	 * propagator; GeneralizedArcConsistency propagates each unit as a whole, see AllDifferentGAC. 
+	 * Scheduled runs the propagators registered with the solver's PropagationEngine. 
+	 */
+	public enum ConsistencyCheck				{ None, ForwardChecking, ArcConsistency, AllDifferent, GeneralizedArcConsistency, Scheduled };
+        public enum NakedCheck    { None, NakedPairs, NakedTriples };
+	
+	private VariableSelectionHeuristic varHeuristics = VariableSelectionHeuristic.None;
+	private ValueSelectionHeuristic valHeuristics = ValueSelectionHeuristic.None;
+	private ConsistencyCheck cChecks = ConsistencyCheck.None;
+        private NakedCheck nCheck = NakedCheck.None;
+	//===============================================================================
+	// Constructors
+	//===============================================================================
+
+	public BTSolver(SudokuFile sf)
+	{
+		this.network = Converter.SudokuFileToConstraintNetwork(sf);
+		this.network.setTrail(trail);
+		this.sudokuGrid = sf;
+		numAssignments = 0;
+		numBacktracks = 0;
+	}
+
+	//===============================================================================
+	// Modifiers
+	//===============================================================================
+
+	/**
+	 * Prepares the solver for a new puzzle, keeping its heuristics, checks and listeners. 
+	 * If the puzzle is a plain sudoku of the same shape as the current one, the variables, constraints and 
+	 * decision stack are reused and only the domains are reinitialised, so a long lived 
+	 * solver allocates almost nothing per puzzle. Must not be called while solving. 
+	 * @param sf next puzzle to solve
+	 */
+	public void reset(SudokuFile sf)
+	{
+		int N = sf.getN();
+		//only plain boards share their topology, killer cages need a new network
+		if(sf.getCages().isEmpty() && network.getTopology() == Converter.getTopology(N, sf.getP(), sf.getQ()))
+		{
+			int[][] board = sf.getBoard();
+			List<Variable> variables = network.getVariables();
+			network.clearModified();
+			Domain fullDomain = null;
+			for(Variable v : variables)
+			{
+				int value = board[v.row()][v.col()];
+				if(value != 0)
+				{
+					v.reset(new Domain(value));
+				}
+				else
+				{
+					if(fullDomain == null)
+					{
+						int[] allValues = new int[N];
+						for(int d = 1; d <= N; d++)
+						{
+							allValues[d - 1] = d;
+						}
+						fullDomain = new Domain(allValues);
+					}
+					v.reset(new Domain(fullDomain));
+				}
+			}
+		}
+		else
+		{
+			network = Converter.SudokuFileToConstraintNetwork(sf);
+			network.setTrail(trail);
+			decisionVars = null;
+			if(engine != null)
+			{
+				PropagationEngine old = engine;
+				engine = new PropagationEngine(network);
+				for(Propagator p : old.getPropagators())
+				{
+					engine.register(p);
+				}
+			}
+		}
+		sudokuGrid = sf;
+		if(engine != null)
+		{
+			engine.clear();
+			engine.resetStatistics();
+		}
+
+		hasSolution = false;
+		solutionCount = 0;
+		solutionLimit = 1;
+		countOnly = false;
+		searchDone = false;
+		handoff = null;
+		deadline = 0;
+		nodeBudget = Long.MAX_VALUE;
+		cancelled = false;
+		stopOutcome = null;
+		numAssignments = 0;
+		numBacktracks = 0;
+		startTime = 0;
+		endTime = 0;
+		maxDepth = 0;
+		numPropagations = 0;
+		varSelectionTime = 0;
+		valSelectionTime = 0;
+		consistencyTime = 0;
+		nakedConsistencyTime = 0;
+	}
+	
+	public void setVariableSelectionHeuristic(VariableSelectionHeuristic vsh)
+	{
+		this.varHeuristics = vsh;
+	}
+	
+	public void setValueSelectionHeuristic(ValueSelectionHeuristic vsh)
+	{
+		this.valHeuristics = vsh;
+	}
+	
+	public void setConsistencyChecks(ConsistencyCheck cc)
+	{
+		this.cChecks = cc;
+	}
+
+        public void setNakedConsistency(NakedCheck nck)
+        {
+                this.nCheck = nck;
+        }
+
+	/**
+	 * Sets the heuristics and checks from a configuration as returned by getConfiguration(), 
+	 * e.g. "MinimumRemainingValue/None/ArcConsistency/None". 
+	 * @throws IllegalArgumentException if the configuration does not name one value of each enum
+	 */
+	public void setConfiguration(String configuration)
+	{
+		String[] parts = configuration.split("/");
+		if(parts.length != 4)
+		{
+			throw new IllegalArgumentException("Not a solver configuration: " + configuration);
+		}
+		setVariableSelectionHeuristic(VariableSelectionHeuristic.valueOf(parts[0]));
+		setValueSelectionHeuristic(ValueSelectionHeuristic.valueOf(parts[1]));
+		setConsistencyChecks(ConsistencyCheck.valueOf(parts[2]));
+		setNakedConsistency(NakedCheck.valueOf(parts[3]));
+	}
+
+	public void addSearchListener(SearchListener listener)
+	{
+		listeners.add(listener);
+	}
+
+	public void removeSearchListener(SearchListener listener)
+	{
+		listeners.remove(listener);
+	}
+	//===============================================================================
+	// Accessors
+	//===============================================================================
+
+	/** 
+	 * @return true if a solution has been found, false otherwise. 
+	 */
+	public boolean hasSolution()
+	{
+		return hasSolution;
+	}
+
+	/**
+	 * @return solution if a solution has been found, otherwise returns the unsolved puzzle.
+	 */
+	public SudokuFile getSolution()
+	{
+		return sudokuGrid;
+	}
+
+	public void printSolverStats()
+	{
+		System.out.println("Time taken:" + getTimeTaken() + " ms");
+		System.out.println("Number of assignments: " + numAssignments);
+		System.out.println("Number of backtracks: " + numBacktracks);
+		System.out.println("Maximum depth: " + maxDepth);
+		System.out.println("Number of constraint propagations: " + numPropagations);
+		System.out.println("Variable selection time: " + varSelectionTime / 1000000 + " ms");
+		System.out.println("Value selection time: " + valSelectionTime / 1000000 + " ms");
+		System.out.println("Consistency check time: " + consistencyTime / 1000000 + " ms");
+		System.out.println("Naked check time: " + nakedConsistencyTime / 1000000 + " ms");
+		if(engine != null)
+		{
+			System.out.print(engine);
+		}
+	}
+
+	/**
+	 * 
+	 * @return time taken by the solver in milliseconds. While the solver is still 
+	 * running, the time taken so far. 
+	 */
+	public long getTimeTaken()
+	{
+		return getTimeTakenNanos() / 1000000;
+	}
+
+	/**
+	 * @return time taken by the solver in nanoseconds. While the solver is still 
+	 * running, the time taken so far. 
+	 */
+	public long getTimeTakenNanos()
+	{
+		if(startTime == 0)
+		{
+			return 0;
+		}
+		long end = endTime;
+		return (end == 0 ? System.nanoTime() : end) - startTime;
+	}
+
+	/**
+	 * @return deepest level of decisions reached
+	 */
+	public int getMaxDepth()
+	{
+		return maxDepth;
+	}
+
+	/**
+	 * @return number of constraints propagated by the consistency checks
+	 */
+	public long getNumPropagations()
+	{
+		return numPropagations;
+	}
+
+	/**
+	 * @return nanoseconds spent in the variable selection heuristic
+	 */
+	public long getVariableSelectionTime()
+	{
+		return varSelectionTime;
+	}
+
+	/**
+	 * @return nanoseconds spent in the value selection heuristic
+	 */
+	public long getValueSelectionTime()
+	{
+		return valSelectionTime;
+	}
+
+	/**
+	 * @return nanoseconds spent in the consistency check
+	 */
+	public long getConsistencyCheckTime()
+	{
+		return consistencyTime;
+	}
+
+	/**
+	 * @return nanoseconds spent in the naked consistency check
+	 */
+	public long getNakedCheckTime()
+	{
+		return nakedConsistencyTime;
+	}
+
+	public int getNumAssignments()
+	{
+		return numAssignments;
+	}
+
+	public int getNumBacktracks()
+	{
+		return numBacktracks;
+	}
+
+	/**
+	 * @return number of solutions found by the last call to solve or countSolutions
+	 */
+	public long getSolutionCount()
+	{
+		return solutionCount;
+	}
+
+	public ConstraintNetwork getNetwork()
+	{
+		return network;
+	}
+
+	/**
+	 * Returns the engine used by the Scheduled consistency check, creating it on first 
+	 * use with the NotEqual, HiddenSingles and NakedPairs propagators. Register more, 
+	 * e.g. StandardPropagator.AllDifferentGAC, before solving. 
+	 * @return propagation engine of this solver
+	 */
+	public PropagationEngine getPropagationEngine()
+	{
+		if(engine == null)
+		{
+			engine = new PropagationEngine(network);
+			engine.register(StandardPropagator.NotEqual);
+			engine.register(StandardPropagator.HiddenSingles);
+			engine.register(StandardPropagator.NakedPairs);
+		}
+		return engine;
+	}
+
+	/**
+	 * @return the heuristics and checks the solver is configured with, e.g. 
+	 * "MinimumRemainingValue/None/ArcConsistency/None"
+	 */
+	public String getConfiguration()
+	{
+		return varHeuristics + "/" + valHeuristics + "/" + cChecks + "/" + nCheck;
+	}
+
+	//===============================================================================
+	// Helper Methods
+	//===============================================================================
+
+	/**
+	 * Checks whether the changes from the last time this method was called are consistent. 
+	 * @return true if consistent, false otherwise
+	 */
+	private boolean checkConsistency()
+	{
+		boolean isConsistent = false;
+		switch(cChecks)
+		{
+		case None: 				isConsistent = assignmentsCheck();
+		break;
+		case ForwardChecking: 	isConsistent = forwardChecking();
+		break;
+		case ArcConsistency: 	isConsistent = arcConsistency();
+		break;
+		case AllDifferent: 		isConsistent = allDifferent(false);
+		break;
+		case GeneralizedArcConsistency: isConsistent = allDifferent(true);
+		break;
+		case Scheduled: 		isConsistent = scheduled();
+		break;
+		default: 				isConsistent = assignmentsCheck();
+		break;
+		}
+		return isConsistent;
+	}
+
+        /**
+	 * Checks whether the changes from the last time this method was called are consistent. 
+	 * @return true if consistent, false otherwise
+	 */
+	private boolean checkNakedConsistency()
+	{
+		boolean isConsistent = false;
+		switch(nCheck)
+		{
+		case None: 				isConsistent = true;
+		break;
+                case NakedPairs:    isConsistent = nakedPairs();
+                break;
+                case NakedTriples:    isConsistent = nakedTriples();
+                break;
+		default: 				isConsistent = true;
+		break;
+		}
+		return isConsistent;
+	}
+	
+	/**
+	 * default consistency check. Ensures no two variables are assigned to the same value.
+	 * @return true if consistent, false otherwise. 
+	 */
+	private boolean assignmentsCheck()
+	{
+		for(Variable v : network.getVariables())
+		{
+			if(v.isAssigned())
+			{
+				for(Variable vOther : network.getNeighborsOfVariable(v))
+				{
+					if (v.getAssignment().equals(vOther.getAssignment()))
+					{
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Forward checking. Propagates each constraint containing a variable modified 
+	 * since the last check once, removing assigned values from the other variables.
+	 * @return true if consistent, false otherwise.
+	 */
+	private boolean forwardChecking()
+	{
+		for(Constraint c : network.getModifiedConstraints())
+		{
+			lastPropagated++;
+			if(!c.propagateConstraint())
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Maintaining Arc Consistency. Repeats forward checking until no domain changes, 
+	 * so variables reduced to a single value by propagation are propagated in turn.
+	 * @return true if consistent, false otherwise.
+	 */
+	private boolean arcConsistency()
+	{
+		List<Constraint> modified = network.getModifiedConstraints();
+		while(!modified.isEmpty())
+		{
+			for(Constraint c : modified)
+			{
+				lastPropagated++;
+				if(!c.propagateConstraint())
+				{
+					return false;
+				}
+			}
+			modified = network.getModifiedConstraints();
+		}
+		return true;
+	}
+
+	/**
+	 * Propagates the modified units as all-different constraints until no domain changes.
+	 * @param gac true for generalized arc consistency, false for the bitmask propagator
+	 * @return true if consistent, false otherwise.
+	 * @see Constraint#propagateAllDifferent()
+	 * @see Constraint#propagateGAC()
+	 */
+	private boolean allDifferent(boolean gac)
+	{
+		List<Constraint> modified = network.getModifiedConstraints();
+		while(!modified.isEmpty())
+		{
+			for(Constraint c : modified)
+			{
+				lastPropagated++;
+				if(!(gac ? c.propagateGAC() : c.propagateAllDifferent()))
+				{
+					return false;
+				}
+			}
+			modified = network.getModifiedConstraints();
+		}
+		return true;
+	}
+
+	/**
+	 * Runs the propagation engine to its fixpoint.
+	 * @return true if consistent, false otherwise.
+	 * @see PropagationEngine
+	 */
+	private boolean scheduled()
+	{
+		PropagationEngine e = getPropagationEngine();
+		long before = e.getTotalInvocations();
+		boolean isConsistent = e.propagate();
+		lastPropagated += (int) (e.getTotalInvocations() - before);
+		return isConsistent;
+	}
+
+	/**
+	 * Naked pairs. Runs on every constraint, then the consistency check on the values 
+	 * it removed, until no domain changes. 
+	 * @return true if consistent, false otherwise.
+	 * @see Constraint#propagateNakedSubsets(int)
+	 */
+	private boolean nakedPairs()
+	{
+		return nakedSubsets(2);
+	}
+	
+	/**
+	 * Naked triples, and naked pairs along the way. 
+	 * @return true if consistent, false otherwise.
+	 * @see #nakedPairs()
+	 */
+	private boolean nakedTriples()
+	{
+		return nakedSubsets(3);
+	}
+
+	private boolean nakedSubsets(int maxSize)
+	{
+		while(true)
+		{
+			long before = sumOfDomainSizes();
+			for(Constraint c : network.getConstraints())
+			{
+				lastPropagated++;
+				if(!c.propagateNakedSubsets(maxSize))
+				{
+					return false;
+				}
+			}
+			if(sumOfDomainSizes() == before)
+			{
+				return true;
+			}
+			if(!checkConsistency())
+			{
+				return false;
+			}
+		}
+	}
+
+	private long sumOfDomainSizes()
+	{
+		long sum = 0;
+		for(Variable v : network.getVariables())
+		{
+			sum += v.size();
+		}
+		return sum;
+	}
+
+	/**
+	 * Selects the next variable to check.
+	 * @return next variable to check. null if there are no more variables to check. 
+	 */
+	private Variable selectNextVariable()
+	{
+		Variable next = null;
+		switch(varHeuristics)
+		{
+		case None: 					next = getfirstUnassignedVariable();
+		break;
+		case MinimumRemainingValue: next = getMRV();
+		break;
+		case Degree:				next = getDegree();
+		break;
+		default:					next = getfirstUnassignedVariable();
+		break;
+		}
+		return next;
+	}
+	
+	/**
+	 * default next variable selection heuristic. Selects the first unassigned variable. 
+	 * @return first unassigned variable. null if no variables are unassigned. 
+	 */
+	private Variable getfirstUnassignedVariable()
+	{
+		for(Variable v : network.getVariables())
+		{
+			if(!v.isAssigned())
+			{
+				return v;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * MRV heuristic. Ties are broken by the order of the variables in the network.
+	 * @return variable with minimum remaining values that isn't assigned, null if all variables are assigned. 
+	 */
+	private Variable getMRV()
+	{
+		Variable mrv = null;
+		for(Variable v : network.getVariables())
+		{
+			if(!v.isAssigned() && (mrv == null || v.size() < mrv.size()))
+			{
+				mrv = v;
+			}
+		}
+		return mrv;
+	}
+	
+	/**
+	 * Degree heuristic. Ties are broken by the order of the variables in the network.
+	 * @return variable constrained by the most unassigned variables, null if all variables are assigned.
+	 */
+	private Variable getDegree()
+	{
+		Variable best = null;
+		int bestDegree = -1;
+		for(Variable v : network.getVariables())
+		{
+			if(v.isAssigned())
+			{
+				continue;
+			}
+			int degree = 0;
+			for(Variable neighbor : network.getNeighborsOfVariable(v))
+			{
+				if(!neighbor.isAssigned())
+				{
+					degree++;
+				}
+			}
+			if(degree > bestDegree)
+			{
+				best = v;
+				bestDegree = degree;
+			}
+		}
+		return best;
+	}
+	
+	/**
+	 * Value Selection Heuristics. Orders the values in the domain of the variable 
+	 * passed as a parameter and returns them as a list.
+	 * @return List of values in the domain of a variable in a specified order. 
+	 */
+	public List<Integer> getNextValues(Variable v)
+	{
+		List<Integer> orderedValues;
+		switch(valHeuristics)
+		{
+		case None: 						orderedValues = getValuesInOrder(v);
+		break;
+		case LeastConstrainingValue: 	orderedValues = getValuesLCVOrder(v);
+		break;
+		default:						orderedValues = getValuesInOrder(v);
+		break;
+		}
+		return orderedValues;
+	}
+	
+	/**
+	 * Default value ordering. 
+	 * @param v Variable whose values need to be ordered
+	 * @return values ordered by lowest to highest. 
+	 */
+	public List<Integer> getValuesInOrder(Variable v)
+	{
+		List<Integer> values = v.getDomain().getValues();
+		
+		Comparator<Integer> valueComparator = new Comparator<Integer>(){
+
+			@Override
+			public int compare(Integer i1, Integer i2) {
+				return i1.compareTo(i2);
+			}
+		};
+		Collections.sort(values, valueComparator);
+		return values;
+	}
+	
+	/**
+	 * LCV heuristic. Orders the values by the number of unassigned neighbors that 
+	 * still have them in their domain, fewest first. Ties are broken by value.
+	 * @param v Variable whose values need to be ordered
+	 * @return values ordered by least constraining first.
+	 */
+	public List<Integer> getValuesLCVOrder(Variable v)
+	{
+		List<Integer> values = getValuesInOrder(v);
+		List<Variable> neighbors = network.getNeighborsOfVariable(v);
+		final Map<Integer, Integer> ruledOut = new HashMap<Integer, Integer>();
+		for(Integer value : values)
+		{
+			int count = 0;
+			for(Variable neighbor : neighbors)
+			{
+				if(!neighbor.isAssigned() && neighbor.getDomain().contains(value))
+				{
+					count++;
+				}
+			}
+			ruledOut.put(value, count);
+		}
+		Collections.sort(values, new Comparator<Integer>(){
+
+			@Override
+			public int compare(Integer i1, Integer i2) {
+				return ruledOut.get(i1).compareTo(ruledOut.get(i2));
+			}
+		});
+		return values;
+	}
+	/**
+	 * @return the current assignment of the network as a SudokuFile
+	 */
+	SudokuFile currentSolution()
+	{
+		SudokuFile solution = Converter.ConstraintNetworkToSudokuFile(network, sudokuGrid.getN(), sudokuGrid.getP(), sudokuGrid.getQ());
+		solution.setName(sudokuGrid.getName());
+		return solution;
+	}
+
+	/**
+	 * Called when solver finds a solution. Stops the search once the solution limit is reached.
+	 */
+	private void success()
+	{
+		solutionCount++;
+		for(SearchListener l : listeners)
+		{
+			l.onSolution(solutionCount);
+		}
+		if(handoff != null && !handoff.solutionFound())
+		{
+			searchDone = true;
+			return;
+		}
+		if(!countOnly && !hasSolution)
+		{
+			hasSolution = true;
+			sudokuGrid = currentSolution();
+		}
+		if(solutionCount >= solutionLimit)
+		{
+			searchDone = true;
+		}
+	}
+
+	//===============================================================================
+	// Solver
+	//===============================================================================
+
+	/**
+	 * Resets the solver to the given puzzle and solves it.
+	 * @param sf puzzle to solve
+	 * @return outcome of the search
+	 * @see #reset(SudokuFile)
+	 */
+	public SolveResult solve(SudokuFile sf)
+	{
+		reset(sf);
+		solve();
+		return getResult();
+	}
+
+	/**
+	 * Solves the puzzle, giving up once timeout has passed.
+	 * @param timeout time limit for the search
+	 * @return outcome of the search, TIMEOUT if the time limit passed first
+	 */
+	public SolveResult solve(Duration timeout)
+	{
+		deadline = System.nanoTime() + timeout.toNanos();
+		solve();
+		return getResult();
+	}
+
+	/**
+	 * Solves the puzzle, giving up after maxNodes assignments. Unlike a time limit, 
+	 * a node budget gives the same result on every machine. 
+	 * @param maxNodes maximum number of assignments
+	 * @return outcome of the search, BUDGET_EXHAUSTED if the budget ran out first
+	 */
+	public SolveResult solve(long maxNodes)
+	{
+		nodeBudget = maxNodes;
+		solve();
+		return getResult();
+	}
+
+	/**
+	 * Asks a running search to stop. Safe to call from any thread.
+	 */
+	public void cancel()
+	{
+		cancelled = true;
+	}
+
+	/**
+	 * @return outcome and statistics of the last run
+	 */
+	public SolveResult getResult()
+	{
+		SolveOutcome outcome;
+		if(solutionCount > 0)
+		{
+			outcome = SolveOutcome.SOLVED;
+		}
+		else if(stopOutcome != null)
+		{
+			outcome = stopOutcome;
+		}
+		else
+		{
+			outcome = SolveOutcome.UNSAT;
+		}
+		return new SolveResult(outcome, hasSolution ? sudokuGrid : null, getTimeTakenNanos(), numAssignments, numBacktracks);
+	}
+
+	/**
+	 * Checked before each assignment. Reading the clock is only done every 16 assignments.
+	 * @return true if the search has to stop because of a limit or cancellation
+	 */
+	private boolean isOutOfBudget()
+	{
+		if(cancelled || Thread.currentThread().isInterrupted())
+		{
+			stopOutcome = SolveOutcome.CANCELLED;
+		}
+		else if(numAssignments >= nodeBudget)
+		{
+			stopOutcome = SolveOutcome.BUDGET_EXHAUSTED;
+		}
+		else if(deadline != 0 && (numAssignments & 0xF) == 0 && System.nanoTime() - deadline > 0)
+		{
+			stopOutcome = SolveOutcome.TIMEOUT;
+		}
+		return stopOutcome != null;
+	}
+
+	/**
+	 * Method to start the solver
+	 */
+	public void solve()
+	{
+		SolverEvents.SolveEvent event = SolverEvents.isRecording() ? new SolverEvents.SolveEvent() : null;
+		if(event != null)
+		{
+			event.begin();
+		}
+		SolverEvents.Sample sample = SolverEvents.startSampling(sudokuGrid.getName(), sudokuGrid.getN(), "BTSolver", getConfiguration(), () -> numAssignments);
+		endTime = 0;
+		startTime = System.nanoTime();
+		try {
+			search();
+		}catch (VariableSelectionException e)
+		{
+			System.out.println("error with variable selection heuristic.");
+		}finally
+		{
+			endTime = System.nanoTime();
+			trail.clear();
+			SolverEvents.stopSampling(sample);
+		}
+		if(event != null)
+		{
+			event.end();
+			if(event.shouldCommit())
+			{
+				event.puzzle = sudokuGrid.getName();
+				event.n = sudokuGrid.getN();
+				event.solver = "BTSolver";
+				event.configuration = getConfiguration();
+				event.solved = solutionCount > 0;
+				event.assignments = numAssignments;
+				event.backtracks = numBacktracks;
+				event.commit();
+			}
+		}
+	}
+
+	/**
+	 * Counts the solutions of the puzzle, stopping as soon as limit solutions are found. 
+	 * Uses the configured heuristics and consistency checks, but does not convert the 
+	 * solutions back into SudokuFiles; hasSolution and getSolution are left untouched. 
+	 * Like solve, it should be called once per puzzle; use reset to run it again. 
+	 * @param limit maximum number of solutions to count, e.g. 2 to check uniqueness
+	 * @return number of solutions found, at most limit
+	 */
+	public long countSolutions(long limit)
+	{
+		solutionLimit = limit;
+		countOnly = true;
+		solve();
+		return solutionCount;
+	}
+
+	/**
+	 * @return true if the puzzle has exactly one solution
+	 * @see #countSolutions(long)
+	 */
+	public boolean hasUniqueSolution()
+	{
+		return countSolutions(2) == 1;
+	}
+
+	/**
+	 * Lazily enumerates all solutions of the puzzle. The search only advances when the 
+	 * next solution is requested. Close the stream (e.g. with try-with-resources) when 
+	 * abandoning it before the end. Like solve, it should be called once per puzzle; use reset to run it again. 
+	 * @return ordered stream of solutions
+	 * @see SolutionIterator
+	 */
+	public Stream<SudokuFile> solutions()
+	{
+		SolutionIterator it = solutionIterator();
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(it, Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(it::close);
+	}
+
+	/**
+	 * @return lazy iterator over all solutions of the puzzle
+	 * @see #solutions()
+	 */
+	public SolutionIterator solutionIterator()
+	{
+		solutionLimit = Long.MAX_VALUE;
+		countOnly = true;
+		SolutionIterator it = new SolutionIterator(this);
+		handoff = it.handoff;
+		return it;
+	}
+
+	/**
+	 * Solver. Runs a depth first search driven by an explicit decision stack instead of 
+	 * recursion, so the search depth is not limited by the thread's stack size. Each stack 
+	 * frame holds a variable, its ordered values in the shared value slab, the next value 
+	 * to try, whether a value of the frame is currently assigned and the trail size before 
+	 * that assignment. Nothing is allocated per node but the trail's domain copies. 
+	 * @throws VariableSelectionException 
+	 */
+	private void search() throws VariableSelectionException
+	{
+		if(decisionVars == null)
+		{
+			int capacity = network.getVariables().size() + 1;
+			int maxDomain = 0;
+			for(Variable v : network.getVariables())
+			{
+				maxDomain = Math.max(maxDomain, v.getDomain().getMaxValue());
+			}
+			decisionVars = new Variable[capacity];
+			valueSlab = new int[capacity * maxDomain];
+			valueOffset = new int[capacity];
+			valueCount = new int[capacity];
+			decisionPos = new int[capacity];
+			decisionAssigned = new boolean[capacity];
+			decisionTrailSize = new int[capacity];
+			lcvCounts = new int[maxDomain + 1];
+		}
+
+		int level = 0;
+		boolean expand = true;
+		while(true)
+		{
+			if(expand)
+			{
+				expand = false;
+				if(Thread.currentThread().isInterrupted())
+				{
+					stopOutcome = SolveOutcome.CANCELLED;
+					searchDone = true;
+					return;
+				}
+
+				//Select unassigned variable
+				long t0 = System.nanoTime();
+				Variable v = selectNextVariable();
+				long t1 = System.nanoTime();
+				varSelectionTime += t1 - t0;
+
+				//check if the assignment is complete
+				if(v == null)
+				{
+					if(isCompleteAssignment())
+					{
+						success();
+					}
+				}
+				else
+				{
+					decisionVars[level] = v;
+					valueOffset[level] = level == 0 ? 0 : valueOffset[level - 1] + valueCount[level - 1];
+					valueCount[level] = orderValues(v, valueOffset[level]);
+					decisionPos[level] = 0;
+					decisionAssigned[level] = false;
+					valSelectionTime += System.nanoTime() - t1;
+					level++;
+					if(level > maxDepth)
+					{
+						maxDepth = level;
+					}
+				}
+			}
+
+			if(searchDone || level == 0)
+			{
+				return;
+			}
+			int top = level - 1;
+			Variable v = decisionVars[top];
+
+			//if the current assignment of this frame failed at any stage, backtrack
+			if(decisionAssigned[top])
+			{
+				trail.undo(decisionTrailSize[top]);
+				numBacktracks++;
+				decisionAssigned[top] = false;
+				for(SearchListener l : listeners)
+				{
+					l.onBacktrack(v, valueSlab[valueOffset[top] + decisionPos[top] - 1], top);
+				}
+			}
+
+			//all values tried, return to the previous decision
+			if(decisionPos[top] == valueCount[top])
+			{
+				decisionVars[top] = null;
+				level--;
+				continue;
+			}
+
+			if(isOutOfBudget())
+			{
+				searchDone = true;
+				return;
+			}
+			decisionTrailSize[top] = trail.size();
+			decisionAssigned[top] = true;
+
+			//move to the next assignment if the value is consistent
+			expand = assign(v, valueSlab[valueOffset[top] + decisionPos[top]++], top);
+		}
+	}
+
+	/**
+	 * Assigns a value to a variable and runs the consistency checks.
+	 * @param level number of decisions above this one
+	 * @return true if the assignment is consistent
+	 */
+	private boolean assign(Variable v, int value, int level)
+	{
+		v.updateDomain(new Domain(value));
+		numAssignments++;
+		for(SearchListener l : listeners)
+		{
+			l.onDecision(v, value, level);
+		}
+
+		SolverEvents.PropagationBatchEvent batch = SolverEvents.isRecording() ? new SolverEvents.PropagationBatchEvent() : null;
+		if(batch != null)
+		{
+			batch.begin();
+		}
+		lastPropagated = 0;
+		long t0 = System.nanoTime();
+		boolean isConsistent = checkConsistency();
+		long t1 = System.nanoTime();
+		consistencyTime += t1 - t0;
+		if(isConsistent)
+		{
+			isConsistent = checkNakedConsistency();
+			nakedConsistencyTime += System.nanoTime() - t1;
+		}
+		numPropagations += lastPropagated;
+		if(batch != null)
+		{
+			batch.end();
+			if(batch.shouldCommit())
+			{
+				batch.puzzle = sudokuGrid.getName();
+				batch.n = sudokuGrid.getN();
+				batch.configuration = getConfiguration();
+				batch.depth = level;
+				batch.constraints = lastPropagated;
+				batch.consistent = isConsistent;
+				batch.commit();
+			}
+		}
+		for(SearchListener l : listeners)
+		{
+			l.onPropagation(level, lastPropagated, System.nanoTime() - t0);
+			if(!isConsistent)
+			{
+				l.onWipeout(v, value, level);
+			}
+		}
+		return isConsistent;
+	}
+
+	/**
+	 * Called when the variable selection heuristic finds no unassigned variable.
+	 * @return true if every variable is assigned and no constraint is violated
+	 * @throws VariableSelectionException if a variable is unassigned
+	 */
+	private boolean isCompleteAssignment() throws VariableSelectionException
+	{
+		for(Variable var : network.getVariables())
+		{
+			if(!var.isAssigned())
+			{
+				throw new VariableSelectionException("Something happened with the variable selection heuristic");
+			}
+		}
+		//forward checking may leave the last propagated values unchecked
+		return network.isConsistent();
+	}
+
+	/**
+	 * Writes the values of the variable into the value slab in the order of getNextValues, 
+	 * without boxing. 
+	 * @param offset position of the first value in the slab
+	 * @return number of values written
+	 */
+	private int orderValues(Variable v, int offset)
+	{
+		Domain domain = v.getDomain();
+		int count = 0;
+		for(int value = domain.nextValue(0); value != 0; value = domain.nextValue(value + 1))
+		{
+			valueSlab[offset + count++] = value;
+		}
+		if(valHeuristics != ValueSelectionHeuristic.LeastConstrainingValue || count < 2)
+		{
+			return count;
+		}
+
+		//number of unassigned neighbors that still have each value
+		for(int i = 0; i < count; i++)
+		{
+			lcvCounts[valueSlab[offset + i]] = 0;
+		}
+		Topology topology = network.getTopology();
+		if(topology != null)
+		{
+			List<Variable> variables = network.getVariables();
+			int[] peerStart = topology.getPeerStart();
+			int[] peers = topology.getPeers();
+			for(int i = peerStart[v.getIndex()]; i < peerStart[v.getIndex() + 1]; i++)
+			{
+				countValues(variables.get(peers[i]), offset, count);
+			}
+		}
+		else
+		{
+			for(Variable neighbor : network.getNeighborsOfVariable(v))
+			{
+				countValues(neighbor, offset, count);
+			}
+		}
+
+		//stable insertion sort by count, so ties stay in value order as in getValuesLCVOrder
+		for(int i = offset + 1; i < offset + count; i++)
+		{
+			int value = valueSlab[i];
+			int j = i - 1;
+			while(j >= offset && lcvCounts[valueSlab[j]] > lcvCounts[value])
+			{
+				valueSlab[j + 1] = valueSlab[j];
+				j--;
+			}
+			valueSlab[j + 1] = value;
+		}
+		return count;
+	}
+
+	/**
+	 * Adds one to the LCV count of each value of the slab range that an unassigned 
+	 * neighbor still has. 
+	 */
+	private void countValues(Variable neighbor, int offset, int count)
+	{
+		if(neighbor.isAssigned())
+		{
+			return;
+		}
+		Domain d = neighbor.getDomain();
+		for(int i = offset; i < offset + count; i++)
+		{
+			if(d.contains(valueSlab[i]))
+			{
+				lcvCounts[valueSlab[i]]++;
+			}
+		}
+	}
+
+	@Override
+	public void run() {
+		solve();
+	}
+}
@@ -1,165 +1,438 @@
-package cspSolver;
-
-import java.util.ArrayList;
-import java.util.List;
-
-/**
- * Constraint represents a NotEquals constraint on a set of variables. 
- * Used to ensure none of the variables contained in the constraint have the same assignment. 
- */
-public class Constraint{ 
-	
-	//===============================================================================
-	// Properties 
-	//===============================================================================
-
-	public List<Variable> vars;
-
-	//===============================================================================
-	// Constructors
-	//===============================================================================
-
-	public Constraint()
-	{
-		vars = new ArrayList<Variable>();
-	}
-	
-	public Constraint(List<Variable> vars)
-	{
-		this.vars = vars;
-	}
-	
-	//===============================================================================
-	// Modifiers
-	//===============================================================================
-
-	public void addVariable(Variable v)
-	{
-		vars.add(v);
-	}
-		
-	//===============================================================================
-	// Accessors
-	//===============================================================================
-	
-	public int size()
-	{
-		return vars.size();
-	}
-	
-	/**
-	 * 
-	 * @param v a Variable
-	 * @return true if v is in the constraint, false otherwise
-	 */
-	public boolean contains(Variable v)
-	{
-		return vars.contains(v) ? true: false;
-	}
-	
-	/**
-	 * Returns whether or not the a variable in the constraint has been modified.
-	 * 
-	 * @return
-	 */
-	public boolean isModified()
-	{
-		for (Variable var : vars)
-		{
-			if (var.isModified())
-			{
-				return true;
-			}
-		}
-		return false;
-	}
-
-	/**
-	 * Used for local search
-	 * @return
-	 */
-	public int getConflicts()
-	{
-		int numConflicts = 0;
-		for(Variable var : vars)
-		{
-			for (Variable otherVar : vars)
-			{
-				if(var.equals(otherVar))
-				{
-					continue;
-				}
-				else if(var.getAssignment().equals(otherVar.getAssignment()))
-				{
-					numConflicts++;
-				}
-			}
-		}
-		
-		return numConflicts;
-	}
-	
-	//===============================================================================
-	// Modifiers
-	//===============================================================================
-	
-	/**
-	 * Attempts to propagate the notequal constraint through the variables in 
-	 * the constraint. If it fails to do so, the propagation stops midway
-	 * and does not reset the changes to the domains of the variables made
-	 * so far. 
-	 * @return true if the constraint is consistent and propagation succeeds, 
-	 * false otherwise
-	 */
-	public boolean propagateConstraint()
-	{
-		//compares assignments and determines if the assigment breaks the constraints
-		for(Variable var : vars)
-		{
-			if(!var.isAssigned())
-				continue;
-			Integer varAssignment = var.getAssignment();
-			for (Variable otherVar : vars)
-			{
-				if(var.equals(otherVar))
-				{
-					continue;
-				}
-				if (otherVar.size() == 1 && otherVar.getAssignment() == varAssignment)
-				{
-					return false;
-				}
-				otherVar.removeValueFromDomain(varAssignment);
-			}
-		}
-		return true;
-	}
-	
-	/**
-	 * Used for local search. Same as propagate constraint. 
-	 * @return true if constraint is consistent, false otherwise. 
-	 */
-	public boolean isConsistent()
-	{
-		return propagateConstraint();
-	}
-
-	//===============================================================================
-	// String representation
-	//===============================================================================
-	
-	public String toString()
-	{
-		StringBuilder sb = new StringBuilder("{");
-		String delim = "";
-		for(Variable v : vars)
-		{
-			sb.append(delim).append(v.getName());
-			delim = ",";
-		}
-		sb.append("}");
-		return sb.toString();
-	}
-
-	
-}
+package cspSolver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Constraint represents a NotEquals constraint on a set of variables. 
+ * Used to ensure none of the variables contained in the constraint have the same assignment. 
+ */
+public class Constraint{ 
+	
+	//===============================================================================
+	// Properties 
+	//===============================================================================
+
+	public List<Variable> vars;
+	private int index = -1;
+	//round of the network's modified queue this constraint was last queued in
+	int queuedRound = -1;
+	private long[] valueMask;
+	private long[] onceMask;
+	private long[] twiceMask;
+	private AllDifferentGAC gac;
+
+	//===============================================================================
+	// Constructors
+	//===============================================================================
+
+	public Constraint()
+	{
+		vars = new ArrayList<Variable>();
+	}
+	
+	public Constraint(List<Variable> vars)
+	{
+		this.vars = vars;
+	}
+	
+	//===============================================================================
+	// Modifiers
+	//===============================================================================
+
+	public void addVariable(Variable v)
+	{
+		vars.add(v);
+	}
+		
+	//===============================================================================
+	// Accessors
+	//===============================================================================
+	
+	public int size()
+	{
+		return vars.size();
+	}
+
+	/**
+	 * @return position of the constraint in its ConstraintNetwork, -1 if it has not been added to one
+	 */
+	public int getIndex()
+	{
+		return index;
+	}
+
+	void setIndex(int index)
+	{
+		this.index = index;
+	}
+	
+	/**
+	 * 
+	 * @param v a Variable
+	 * @return true if v is in the constraint, false otherwise
+	 */
+	public boolean contains(Variable v)
+	{
+		return vars.contains(v) ? true: false;
+	}
+	
+	/**
+	 * Returns whether or not the a variable in the constraint has been modified.
+	 * 
+	 * @return
+	 */
+	public boolean isModified()
+	{
+		for (Variable var : vars)
+		{
+			if (var.isModified())
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Used for local search
+	 * @return
+	 */
+	public int getConflicts()
+	{
+		int numConflicts = 0;
+		for(Variable var : vars)
+		{
+			for (Variable otherVar : vars)
+			{
+				if(var.equals(otherVar))
+				{
+					continue;
+				}
+				else if(var.getAssignment().equals(otherVar.getAssignment()))
+				{
+					numConflicts++;
+				}
+			}
+		}
+		
+		return numConflicts;
+	}
+	
+	//===============================================================================
+	// Modifiers
+	//===============================================================================
+	
+	/**
+	 * Attempts to propagate the notequal constraint through the variables in 
+	 * the constraint. If it fails to do so, the propagation stops midway
+	 * and does not reset the changes to the domains of the variables made
+	 * so far. 
+	 * @return true if the constraint is consistent and propagation succeeds, 
+	 * false otherwise
+	 */
+	public boolean propagateConstraint()
+	{
+		//compares assignments and determines if the assigment breaks the constraints
+		for(Variable var : vars)
+		{
+			if(!var.isAssigned())
+				continue;
+			int varAssignment = var.getAssignment();
+			for (Variable otherVar : vars)
+			{
+				if(var.equals(otherVar))
+				{
+					continue;
+				}
+				if (otherVar.size() == 1 && otherVar.getAssignment() == varAssignment)
+				{
+					return false;
+				}
+				otherVar.removeValueFromDomain(varAssignment);
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Same pruning as propagateConstraint in O(k) per pass: the values of the assigned 
+	 * variables are collected in a bitmask, which is then removed from the other 
+	 * variables in one operation each. Passes repeat while variables become assigned, 
+	 * so the constraint is at its fixpoint afterwards. 
+	 * @return true if the constraint is consistent and propagation succeeds, 
+	 * false otherwise
+	 */
+	public boolean propagateAllDifferent()
+	{
+		if(valueMask == null)
+		{
+			int maxValue = 0;
+			for(Variable var : vars)
+			{
+				maxValue = Math.max(maxValue, var.getDomain().getMaxValue());
+			}
+			valueMask = new long[(maxValue >>> 6) + 1];
+		}
+		long[] assigned = valueMask;
+		Arrays.fill(assigned, 0);
+		int numAssigned = 0;
+		for(Variable var : vars)
+		{
+			if(var.isAssigned())
+			{
+				int value = var.getAssignment();
+				if((assigned[value >>> 6] & (1L << value)) != 0)
+				{
+					return false;
+				}
+				assigned[value >>> 6] |= 1L << value;
+				numAssigned++;
+			}
+		}
+
+		int previous = -1;
+		while(numAssigned != previous)
+		{
+			previous = numAssigned;
+			for(Variable var : vars)
+			{
+				if(var.size() > 1 && var.removeValuesFromDomain(assigned))
+				{
+					if(var.size() == 0)
+					{
+						return false;
+					}
+					if(var.size() == 1)
+					{
+						int value = var.getAssignment();
+						if((assigned[value >>> 6] & (1L << value)) != 0)
+						{
+							return false;
+						}
+						assigned[value >>> 6] |= 1L << value;
+						numAssigned++;
+					}
+				}
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Hidden singles: a value that only one variable of the constraint can take is 
+	 * assigned to that variable. Only applies when the variables have exactly as many 
+	 * values between them as there are variables, as in the units of a sudoku, since 
+	 * every value must then be used. 
+	 * @return false if a value can no longer be placed, true otherwise
+	 */
+	public boolean propagateHiddenSingles()
+	{
+		int words = ensureMasks();
+		long[] once = onceMask;
+		long[] twice = twiceMask;
+		Arrays.fill(once, 0);
+		Arrays.fill(twice, 0);
+		for(Variable var : vars)
+		{
+			Domain d = var.getDomain();
+			for(int w = 0; w < words; w++)
+			{
+				long word = d.getWord(w);
+				twice[w] |= once[w] & word;
+				once[w] |= word;
+			}
+		}
+		int numValues = 0;
+		for(int w = 0; w < words; w++)
+		{
+			numValues += Long.bitCount(once[w]);
+		}
+		if(numValues < vars.size())
+		{
+			return false;
+		}
+		if(numValues > vars.size())
+		{
+			return true;
+		}
+		for(int w = 0; w < words; w++)
+		{
+			long hidden = once[w] & ~twice[w];
+			while(hidden != 0)
+			{
+				int value = (w << 6) + Long.numberOfTrailingZeros(hidden);
+				hidden &= hidden - 1;
+				Variable holder = null;
+				for(Variable var : vars)
+				{
+					if(var.getDomain().contains(value))
+					{
+						holder = var;
+						break;
+					}
+				}
+				//a variable holding two hidden values can only take one of them
+				if(holder == null)
+				{
+					return false;
+				}
+				if(holder.size() > 1)
+				{
+					holder.updateDomain(new Domain(value));
+				}
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Naked subsets: if n unassigned variables of the constraint share only n values 
+	 * between them, no other variable can take those values. Looks at pairs, and at 
+	 * triples if maxSize is 3. 
+	 * @param maxSize largest subset to look for, 2 for naked pairs, 3 for naked triples
+	 * @return false if n variables share fewer than n values, true otherwise
+	 */
+	public boolean propagateNakedSubsets(int maxSize)
+	{
+		int words = ensureMasks();
+		List<Variable> candidates = new ArrayList<Variable>();
+		for(Variable var : vars)
+		{
+			if(var.size() > 1 && var.size() <= maxSize)
+			{
+				candidates.add(var);
+			}
+		}
+		int n = candidates.size();
+		for(int i = 0; i < n; i++)
+		{
+			for(int j = i + 1; j < n; j++)
+			{
+				if(!nakedSubset(words, candidates.get(i), candidates.get(j), null))
+				{
+					return false;
+				}
+				if(maxSize < 3)
+				{
+					continue;
+				}
+				for(int l = j + 1; l < n; l++)
+				{
+					if(!nakedSubset(words, candidates.get(i), candidates.get(j), candidates.get(l)))
+					{
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Checks one subset of two or three variables and removes its values from the 
+	 * other variables if it is naked.
+	 * @param c third variable, null for a pair
+	 * @return false if the subset has fewer values than variables
+	 */
+	private boolean nakedSubset(int words, Variable a, Variable b, Variable c)
+	{
+		long[] union = onceMask;
+		int subsetSize = c == null ? 2 : 3;
+		int numValues = 0;
+		for(int w = 0; w < words; w++)
+		{
+			union[w] = a.getDomain().getWord(w) | b.getDomain().getWord(w) | (c == null ? 0 : c.getDomain().getWord(w));
+			numValues += Long.bitCount(union[w]);
+		}
+		if(numValues < subsetSize)
+		{
+			return false;
+		}
+		if(numValues > subsetSize)
+		{
+			return true;
+		}
+		for(Variable var : vars)
+		{
+			if(var != a && var != b && var != c)
+			{
+				if(var.size() == 1 && var.getDomain().intersects(union))
+				{
+					return false;
+				}
+				var.removeValuesFromDomain(union);
+				if(var.size() == 0)
+				{
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Sizes the scratch masks for the largest value of the variables. 
+	 * @return number of words in a mask
+	 */
+	private int ensureMasks()
+	{
+		if(onceMask == null)
+		{
+			int maxValue = 0;
+			for(Variable var : vars)
+			{
+				maxValue = Math.max(maxValue, var.getDomain().getMaxValue());
+			}
+			onceMask = new long[(maxValue >>> 6) + 1];
+			twiceMask = new long[onceMask.length];
+		}
+		return onceMask.length;
+	}
+	
+	/**
+	 * Generalized arc consistency: removes every value that cannot be part of any 
+	 * solution of this all-different constraint on its own. Prunes more than 
+	 * propagateConstraint, e.g. two variables left with the same two values remove 
+	 * those values from the rest of the unit. 
+	 * @return true if the constraint can still be satisfied, false otherwise
+	 * @see AllDifferentGAC
+	 */
+	public boolean propagateGAC()
+	{
+		if(gac == null)
+		{
+			gac = new AllDifferentGAC(this);
+		}
+		return gac.propagate();
+	}
+	
+	/**
+	 * Used for local search. Same as propagate constraint. 
+	 * @return true if constraint is consistent, false otherwise. 
+	 */
+	public boolean isConsistent()
+	{
+		return propagateConstraint();
+	}
+
+	//===============================================================================
+	// String representation
+	//===============================================================================
+	
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder("{");
+		String delim = "";
+		for(Variable v : vars)
+		{
+			sb.append(delim).append(v.getName());
+			delim = ",";
+		}
+		sb.append("}");
+		return sb.toString();
+	}
+
+	
+}
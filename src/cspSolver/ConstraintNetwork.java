@@ -1,178 +1,325 @@
-package cspSolver;
-
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
-
-/**
- * CSP representation of the problem. Contains the variables, constraints, and 
- * many helpful accessors. 
- *
- */
-public class ConstraintNetwork {
-	
-	//===============================================================================
-	// Properties
-	//===============================================================================
-	
-	private List<Constraint> constraints;
-	private List<Variable> variables;
-	
-	//===============================================================================
-	// Constructor 
-	//===============================================================================
-	
-	public ConstraintNetwork()
-	{
-		variables = new ArrayList<Variable>();
-		constraints = new ArrayList<Constraint>();
-	}
-	
-	//===============================================================================
-	// Modifiers
-	//===============================================================================
-	
-	public void add(Constraint c)
-	{
-		if (!constraints.contains(c))
-		{
-			constraints.add(c);
-		}
-	}
-	
-	public void add(Variable v)
-	{
-		if(!variables.contains(v))
-		{
-			variables.add(v);
-		}
-	}
-	
-	/**
-	 * Used for Local Search. Assigns a value to a variable based on the parameter a
-	 * @param a Assignment to actualize 
-	 */
-	public void pushAssignment(Assignment a) {
-		a.getVariable().assignValue(a.getValue());
-	}
-	
-	//===============================================================================
-	// Accessors
-	//===============================================================================
-	
-	public List<Constraint> getConstraints()
-	{
-		return constraints;
-	}
-	
-	public List<Variable> getVariables()
-	{
-		return variables;
-	}
-	
-	public List<Variable> getNeighborsOfVariable(Variable v)
-	{
-		Set<Variable> neighbors = new HashSet<Variable>();
-		
-		for(Constraint c : constraints)
-		{
-			if(c.contains(v))
-			{
-				neighbors.addAll(c.vars);
-			}
-		}
-		neighbors.remove(v);
-		return new ArrayList<Variable>(neighbors);
-	}
-	
-	/**
-	 * Used for local search. Determines if the current assignment is consistent.
-	 * @return
-	 */
-	public boolean isConsistent()
-	{
-		for (Constraint c : constraints)
-		{
-			if (!c.isConsistent())
-			{
-				return false;
-			}
-		}
-		return true;
-	}
-	
-	/**
-	 * @param v variable to check
-	 * @return list of constraints that contains v
-	 */
-	public List<Constraint> getConstraintsContainingVariable(Variable v)
-	{
-		List<Constraint> outList = new ArrayList<Constraint>();
-		for(Constraint c : constraints)
-		{
-			if(c.contains(v))
-			{
-				outList.add(c);
-			}
-		}
-		return outList;
-	}
-	
-	/**
-	 * Returns the constraints that contain variables whose domains were 
-	 * modified since the last call to this method. 
-	 * 
-	 * After getting the constraints, it will reset each variable to
-	 * unmodified.
-	 * 
-	 * Note* The first call to this method returns the constraints containing
-	 * the initialized variables. 
-	 * 
-	 * @return ArrayList of modified constraints
-	 */
-	public List<Constraint> getModifiedConstraints()
-	{
-		List<Constraint> mConstraints = new ArrayList<Constraint>();
-
-		for (Constraint c : constraints)
-		{
-			if (c.isModified())
-			{
-				mConstraints.add(c);
-			}
-		}
-
-		for (Variable v : getVariables())
-		{
-			v.setModified(false);
-		}
-		return mConstraints;
-	}
-
-	//===============================================================================
-	// String Representation 
-	//===============================================================================
-	
-	public String toString()
-	{
-		StringBuilder sb = new StringBuilder();
-		sb.append(variables.size() + " Variables: {");
-		String delim = "";
-		
-		for (Variable v : variables)
-		{
-			sb.append(delim).append(v.getName());
-			delim = ",";
-		}
-		sb.append("}");
-		
-		sb.append("\n" + constraints.size() + " Constraints:");
-		delim = "\n";
-		for (Constraint c: constraints)
-		{
-			sb.append(delim).append(c.toString());
-		}
-		return sb.toString();
-	}
-}
+package cspSolver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * CSP representation of the problem. Contains the variables, constraints, and 
+ * many helpful accessors. 
+ *
+ */
+public class ConstraintNetwork {
+	
+	//===============================================================================
+	// Properties
+	//===============================================================================
+	
+	private List<Constraint> constraints;
+	private List<Variable> variables;
+	private Set<Constraint> constraintSet;
+	private Set<Variable> variableSet;
+	private Topology topology;
+
+	//constraints containing each variable, by variable index
+	private List<List<Constraint>> constraintsOfVariable;
+	private List<Constraint> modifiedConstraints;
+	private List<Variable> modifiedVariables;
+	private int round;
+	private Trail trail = new Trail();
+
+	private static final Comparator<Constraint> BY_INDEX = new Comparator<Constraint>(){
+		@Override
+		public int compare(Constraint c1, Constraint c2) {
+			return Integer.compare(c1.getIndex(), c2.getIndex());
+		}
+	};
+	
+	//===============================================================================
+	// Constructor 
+	//===============================================================================
+	
+	public ConstraintNetwork()
+	{
+		variables = new ArrayList<Variable>();
+		constraints = new ArrayList<Constraint>();
+		variableSet = new HashSet<Variable>();
+		constraintSet = new HashSet<Constraint>();
+		constraintsOfVariable = new ArrayList<List<Constraint>>();
+		modifiedConstraints = new ArrayList<Constraint>();
+		modifiedVariables = new ArrayList<Variable>();
+	}
+
+	/**
+	 * Constructs a network whose structure is described by a compiled topology. 
+	 * Variables and constraints must be added in the order of the topology's 
+	 * variables and units. 
+	 * @param topology compiled structure of the network
+	 */
+	public ConstraintNetwork(Topology topology)
+	{
+		this();
+		this.topology = topology;
+	}
+	
+	//===============================================================================
+	// Modifiers
+	//===============================================================================
+	
+	/**
+	 * Adds a constraint. Its variables must already have been added to the network 
+	 * and must not change afterwards. 
+	 */
+	public void add(Constraint c)
+	{
+		if (constraintSet.add(c))
+		{
+			c.setIndex(constraints.size());
+			constraints.add(c);
+			boolean modified = false;
+			for(Variable v : c.vars)
+			{
+				constraintsOfVariable.get(v.getIndex()).add(c);
+				modified |= v.isModified();
+			}
+			if(modified)
+			{
+				queue(c);
+			}
+		}
+	}
+	
+	public void add(Variable v)
+	{
+		if(variableSet.add(v))
+		{
+			v.setIndex(variables.size());
+			v.setNetwork(this);
+			variables.add(v);
+			constraintsOfVariable.add(new ArrayList<Constraint>());
+			if(v.isModified())
+			{
+				modifiedVariables.add(v);
+			}
+		}
+	}
+
+	/**
+	 * Called by a variable of this network when it becomes modified. Queues the 
+	 * constraints containing it, each at most once until the queue is drained. 
+	 */
+	void variableModified(Variable v)
+	{
+		modifiedVariables.add(v);
+		for(Constraint c : constraintsOfVariable.get(v.getIndex()))
+		{
+			queue(c);
+		}
+	}
+
+	private void queue(Constraint c)
+	{
+		if(c.queuedRound != round)
+		{
+			c.queuedRound = round;
+			modifiedConstraints.add(c);
+		}
+	}
+
+	/**
+	 * Empties the modified queue and clears the modified flag of every variable, 
+	 * e.g. before the variables are reinitialised for a new puzzle. 
+	 */
+	void clearModified()
+	{
+		getModifiedConstraints();
+		for(Variable v : variables)
+		{
+			v.setModified(false);
+		}
+	}
+	
+	/**
+	 * Used for Local Search. Assigns a value to a variable based on the parameter a
+	 * @param a Assignment to actualize 
+	 */
+	public void pushAssignment(Assignment a) {
+		a.getVariable().assignValue(a.getValue());
+	}
+	
+	//===============================================================================
+	// Accessors
+	//===============================================================================
+	
+	public List<Constraint> getConstraints()
+	{
+		return constraints;
+	}
+	
+	public List<Variable> getVariables()
+	{
+		return variables;
+	}
+	
+	/**
+	 * @return compiled structure of the network, null if the network was built without one
+	 */
+	public Topology getTopology()
+	{
+		return topology;
+	}
+
+	/**
+	 * @return trail the variables of this network record their changes on
+	 */
+	public Trail getTrail()
+	{
+		return trail;
+	}
+
+	/**
+	 * Makes the variables record their changes on another trail, e.g. the one of the 
+	 * solver that owns the network. Must not be called while searching. 
+	 */
+	public void setTrail(Trail trail)
+	{
+		this.trail = trail;
+	}
+	
+	public List<Variable> getNeighborsOfVariable(Variable v)
+	{
+		if(topology != null)
+		{
+			int[] peerStart = topology.getPeerStart();
+			int[] peers = topology.getPeers();
+			int index = v.getIndex();
+			List<Variable> neighbors = new ArrayList<Variable>(peerStart[index + 1] - peerStart[index]);
+			for(int i = peerStart[index]; i < peerStart[index + 1]; i++)
+			{
+				neighbors.add(variables.get(peers[i]));
+			}
+			return neighbors;
+		}
+
+		Set<Variable> neighbors = new HashSet<Variable>();
+		
+		for(Constraint c : constraints)
+		{
+			if(c.contains(v))
+			{
+				neighbors.addAll(c.vars);
+			}
+		}
+		neighbors.remove(v);
+		return new ArrayList<Variable>(neighbors);
+	}
+	
+	/**
+	 * Used for local search. Determines if the current assignment is consistent.
+	 * @return
+	 */
+	public boolean isConsistent()
+	{
+		for (Constraint c : constraints)
+		{
+			if (!c.isConsistent())
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * @param v variable to check
+	 * @return list of constraints that contains v
+	 */
+	public List<Constraint> getConstraintsContainingVariable(Variable v)
+	{
+		if(topology != null)
+		{
+			int[] varUnitStart = topology.getVarUnitStart();
+			int[] varUnits = topology.getVarUnits();
+			int index = v.getIndex();
+			List<Constraint> outList = new ArrayList<Constraint>(varUnitStart[index + 1] - varUnitStart[index]);
+			for(int i = varUnitStart[index]; i < varUnitStart[index + 1]; i++)
+			{
+				outList.add(constraints.get(varUnits[i]));
+			}
+			return outList;
+		}
+
+		List<Constraint> outList = new ArrayList<Constraint>();
+		for(Constraint c : constraints)
+		{
+			if(c.contains(v))
+			{
+				outList.add(c);
+			}
+		}
+		return outList;
+	}
+	
+	/**
+	 * Returns the constraints that contain variables whose domains were 
+	 * modified since the last call to this method. 
+	 * 
+	 * After getting the constraints, it will reset each variable to
+	 * unmodified.
+	 * 
+	 * Note* The first call to this method returns the constraints containing
+	 * the initialized variables. 
+	 * 
+	 * Variables queue their constraints as they are modified, so this only costs 
+	 * as much as the changes since the last call. The constraints are returned in 
+	 * network order. 
+	 * 
+	 * @return ArrayList of modified constraints
+	 */
+	public List<Constraint> getModifiedConstraints()
+	{
+		List<Constraint> mConstraints = modifiedConstraints;
+		modifiedConstraints = new ArrayList<Constraint>();
+		round++;
+		if (mConstraints.size() > 1)
+		{
+			Collections.sort(mConstraints, BY_INDEX);
+		}
+
+		for (Variable v : modifiedVariables)
+		{
+			v.setModified(false);
+		}
+		modifiedVariables.clear();
+		return mConstraints;
+	}
+
+	//===============================================================================
+	// String Representation 
+	//===============================================================================
+	
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append(variables.size() + " Variables: {");
+		String delim = "";
+		
+		for (Variable v : variables)
+		{
+			sb.append(delim).append(v.getName());
+			delim = ",";
+		}
+		sb.append("}");
+		
+		sb.append("\n" + constraints.size() + " Constraints:");
+		delim = "\n";
+		for (Constraint c: constraints)
+		{
+			sb.append(delim).append(c.toString());
+		}
+		return sb.toString();
+	}
+}
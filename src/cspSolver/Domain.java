@@ -1,183 +1,355 @@
-package cspSolver;
-
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
-
-/**
- * Represents the domain of a variable, i.e. the possible values that each
- * variable may assign. 
- */
-public class Domain implements Iterable<Integer>{
-	
-	//===============================================================================
-	// Properties
-	//===============================================================================
-	
-	private ArrayList<Integer> values = new ArrayList<Integer>();
-	private boolean modified;
-	
-	//===============================================================================
-	// Constructors
-	//===============================================================================
-	
-	/**
-	 * Constructs a domain with a single value
-	 * @param value the sole value within the domain
-	 */
-	public Domain(int value)
-	{
-		values.add(value);
-	}
-	
-	/**
-	 * Constructs a domain with an array of values
-	 * @param values all possible values for the domain
-	 */
-	public Domain(int[] values)
-	{
-		for(int i = 0; i < values.length; i++)
-		{
-			this.values.add(values[i]);
-		}
-	}
-	
-	/**
-	 * Constructs a domain with an ArrayList<Integer> of values
-	 * @param values all possible values for the domain
-	 */
-	public Domain(List<Integer> values)
-	{
-		this.values.clear();
-		this.values.addAll(values);
-	}
-	
-	/**
-	 * Copy Constructor. Used to keep a copy of assignments in the Trail.
-	 * @param d the domain to copy
-	 * @see Trail
-	 */
-	public Domain(Domain d)
-	{
-		for(Integer value : d.getValues())
-		{
-			this.values.add(value);
-		}
-	}
-	
-	//===============================================================================
-	// Accessors
-	//===============================================================================
-	
-	/**
-	 * *Note, Domain is iterable. You can use
-	 * 	for(Integer i : Domain)
-	 *  {
-	 *  	...
-	 *  }
-	 *  
-	 * @return ArrayList of values in Domain
-	 */
-	public ArrayList<Integer> getValues()
-	{
-		return values;
-	}
-	
-	/**
-	 * Checks if a value exists within the domain
-	 * @param value to check
-	 * @return true if <tt>value</tt> exists within the domain, false otherwise.
-	 */
-	public boolean contains(int value)
-	{
-		if (values.contains(value))
-		{
-			return true;
-		}
-		return false;
-	}
-	
-	/** 
-	 * @return number of values in the domain
-	 */
-	public int size()
-	{
-		return values.size();
-	}
-	
-	/**
-	 * @return true if no values are contained in the domain. 
-	 */
-	public boolean isEmpty()
-	{
-		return values.isEmpty();
-	}
-	
-	/**
-	 * Returns whether or not the domain has been modified.
-	 * 
-	 * @return true if the domain has been modified
-	 */
-	public boolean isModified()
-	{
-		return modified;
-	}
-	
-	//===============================================================================
-	// Modifiers
-	//===============================================================================
-
-	/**
-	 * Removes <tt>value</tt> from the domain.
-	 * @param value the int to be removed
-	 */
-	public boolean remove(int value)
-	{
-		Integer v = value;
-		
-		if(!contains(value))
-		{
-			return false;
-		}
-		
-		setModified(true);
-		values.remove(v);
-		return true;
-	}
-	
-	/**
-	 * Sets modified flag.
-	 * @param modified value to set the modified flag. 
-	 */
-	public void setModified(boolean modified)
-	{
-		this.modified = modified;
-	}
-
-	//===============================================================================
-	// Iterator
-	//===============================================================================
-	
-	@Override
-	public Iterator<Integer> iterator() {
-		return values.iterator();
-	}
-	
-	//===============================================================================
-	// String representation
-	//===============================================================================
-	
-	public String toString()
-	{
-		StringBuilder sb = new StringBuilder("{");
-		String delim = "";
-		for (Integer i : values)
-		{
-			sb.append(delim).append(i);
-			delim = ",";
-		}
-		sb.append("}");
-		return sb.toString();
-	}
-}
-
+package cspSolver;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Represents the domain of a variable, i.e. the possible values that each
+ * variable may assign. 
+ * 
+ * Values are kept in a bitset of 64 bit words, bit v standing for value v, so 
+ * domains of any board size are supported and copies for the trail are cheap. 
+ */
+public class Domain implements Iterable<Integer>{
+	
+	//===============================================================================
+	// Properties
+	//===============================================================================
+	
+	private long[] words;
+	private int size;
+	private boolean modified;
+	
+	//===============================================================================
+	// Constructors
+	//===============================================================================
+	
+	/**
+	 * Constructs a domain with a single value
+	 * @param value the sole value within the domain
+	 */
+	public Domain(int value)
+	{
+		words = new long[wordIndex(value) + 1];
+		add(value);
+	}
+	
+	/**
+	 * Constructs a domain with an array of values
+	 * @param values all possible values for the domain
+	 */
+	public Domain(int[] values)
+	{
+		int max = 0;
+		for(int i = 0; i < values.length; i++)
+		{
+			max = Math.max(max, values[i]);
+		}
+		words = new long[wordIndex(max) + 1];
+		for(int i = 0; i < values.length; i++)
+		{
+			add(values[i]);
+		}
+	}
+	
+	/**
+	 * Constructs a domain with an ArrayList<Integer> of values
+	 * @param values all possible values for the domain
+	 */
+	public Domain(List<Integer> values)
+	{
+		int max = 0;
+		for(Integer value : values)
+		{
+			max = Math.max(max, value);
+		}
+		words = new long[wordIndex(max) + 1];
+		for(Integer value : values)
+		{
+			add(value);
+		}
+	}
+	
+	/**
+	 * Copy Constructor. Used to keep a copy of assignments in the Trail.
+	 * @param d the domain to copy
+	 * @see Trail
+	 */
+	public Domain(Domain d)
+	{
+		this.words = d.words.clone();
+		this.size = d.size;
+	}
+	
+	//===============================================================================
+	// Accessors
+	//===============================================================================
+	
+	/**
+	 * *Note, Domain is iterable. You can use
+	 * 	for(Integer i : Domain)
+	 *  {
+	 *  	...
+	 *  }
+	 *  
+	 * @return ArrayList of values in Domain, lowest to highest. Changes to the list 
+	 * do not affect the domain. 
+	 */
+	public ArrayList<Integer> getValues()
+	{
+		ArrayList<Integer> values = new ArrayList<Integer>(size);
+		for(Integer value : this)
+		{
+			values.add(value);
+		}
+		return values;
+	}
+	
+	/**
+	 * Checks if a value exists within the domain
+	 * @param value to check
+	 * @return true if <tt>value</tt> exists within the domain, false otherwise.
+	 */
+	public boolean contains(int value)
+	{
+		int w = wordIndex(value);
+		return w < words.length && (words[w] & (1L << value)) != 0;
+	}
+	
+	/** 
+	 * @return number of values in the domain
+	 */
+	public int size()
+	{
+		return size;
+	}
+	
+	/**
+	 * @return true if no values are contained in the domain. 
+	 */
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+	
+	/**
+	 * @return the lowest value in the domain, 0 if the domain is empty
+	 */
+	public int getMinValue()
+	{
+		for(int w = 0; w < words.length; w++)
+		{
+			if(words[w] != 0)
+			{
+				return (w << 6) + Long.numberOfTrailingZeros(words[w]);
+			}
+		}
+		return 0;
+	}
+	
+	/**
+	 * @return the highest value in the domain, 0 if the domain is empty
+	 */
+	public int getMaxValue()
+	{
+		for(int w = words.length - 1; w >= 0; w--)
+		{
+			if(words[w] != 0)
+			{
+				return (w << 6) + 63 - Long.numberOfLeadingZeros(words[w]);
+			}
+		}
+		return 0;
+	}
+	
+	/**
+	 * Iterates the domain without boxing: 
+	 * 	for(int v = d.nextValue(0); v != 0; v = d.nextValue(v + 1))
+	 * @param from lowest value to consider
+	 * @return the lowest value in the domain that is at least <tt>from</tt>, 0 if there is none
+	 */
+	public int nextValue(int from)
+	{
+		int w = wordIndex(from);
+		if(w >= words.length)
+		{
+			return 0;
+		}
+		long word = words[w] & (-1L << from);
+		while(word == 0)
+		{
+			if(++w == words.length)
+			{
+				return 0;
+			}
+			word = words[w];
+		}
+		return (w << 6) + Long.numberOfTrailingZeros(word);
+	}
+	
+	/**
+	 * @param mask set of values in the same layout as the domain, bit v of word v/64 standing for value v
+	 * @return true if any value of the domain is in the mask
+	 */
+	public boolean intersects(long[] mask)
+	{
+		int n = Math.min(words.length, mask.length);
+		for(int w = 0; w < n; w++)
+		{
+			if((words[w] & mask[w]) != 0)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Returns whether or not the domain has been modified.
+	 * 
+	 * @return true if the domain has been modified
+	 */
+	public boolean isModified()
+	{
+		return modified;
+	}
+	
+	//===============================================================================
+	// Modifiers
+	//===============================================================================
+
+	/**
+	 * Removes <tt>value</tt> from the domain.
+	 * @param value the int to be removed
+	 */
+	public boolean remove(int value)
+	{
+		if(!contains(value))
+		{
+			return false;
+		}
+		
+		setModified(true);
+		words[wordIndex(value)] &= ~(1L << value);
+		size--;
+		return true;
+	}
+	
+	/**
+	 * Removes every value of the mask from the domain.
+	 * @param mask set of values in the same layout as the domain
+	 * @return true if any value was removed
+	 * @see #intersects(long[])
+	 */
+	public boolean removeAll(long[] mask)
+	{
+		int n = Math.min(words.length, mask.length);
+		int removed = 0;
+		for(int w = 0; w < n; w++)
+		{
+			long common = words[w] & mask[w];
+			if(common != 0)
+			{
+				words[w] &= ~common;
+				removed += Long.bitCount(common);
+			}
+		}
+		if(removed == 0)
+		{
+			return false;
+		}
+		setModified(true);
+		size -= removed;
+		return true;
+	}
+	
+	/**
+	 * Sets modified flag.
+	 * @param modified value to set the modified flag. 
+	 */
+	public void setModified(boolean modified)
+	{
+		this.modified = modified;
+	}
+
+	//===============================================================================
+	// Helper Methods
+	//===============================================================================
+
+	/**
+	 * @return the w-th 64 bit word of the bitset, 0 beyond the last word
+	 */
+	long getWord(int w)
+	{
+		return w < words.length ? words[w] : 0;
+	}
+
+	private void add(int value)
+	{
+		int w = wordIndex(value);
+		if((words[w] & (1L << value)) == 0)
+		{
+			words[w] |= 1L << value;
+			size++;
+		}
+	}
+
+	private static int wordIndex(int value)
+	{
+		return value >>> 6;
+	}
+
+	//===============================================================================
+	// Iterator
+	//===============================================================================
+	
+	/**
+	 * @return iterator over the values of the domain, lowest to highest
+	 */
+	@Override
+	public Iterator<Integer> iterator() {
+		return new Iterator<Integer>(){
+			private int w = 0;
+			private long word = words.length > 0 ? words[0] : 0;
+
+			@Override
+			public boolean hasNext() {
+				while(word == 0 && w + 1 < words.length)
+				{
+					word = words[++w];
+				}
+				return word != 0;
+			}
+
+			@Override
+			public Integer next() {
+				if(!hasNext())
+				{
+					throw new NoSuchElementException();
+				}
+				int value = (w << 6) + Long.numberOfTrailingZeros(word);
+				word &= word - 1;
+				return value;
+			}
+		};
+	}
+	
+	//===============================================================================
+	// String representation
+	//===============================================================================
+	
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder("{");
+		String delim = "";
+		for (Integer i : this)
+		{
+			sb.append(delim).append(i);
+			delim = ",";
+		}
+		sb.append("}");
+		return sb.toString();
+	}
+}
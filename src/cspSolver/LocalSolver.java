@@ -1,176 +1,353 @@
-package cspSolver;
-
-import java.util.ArrayList;
-import java.util.List;
-
-import sudoku.Converter;
-import sudoku.SudokuFile;
-
-/**
- * Basic local search solver
- *
- */
-public class LocalSolver implements Runnable{
-
-	//===============================================================================
-	// Properties
-	//===============================================================================
-
-	private ConstraintNetwork network;
-	private int n;
-
-	private int numTotalAttempts; 
-	private int numAttempts = 0; //used for restarts
-	private int limitAttempts = 1000; //used for restarts
-	private long startTime, endTime;
-
-	private SudokuFile sudokuGrid;
-
-	//===============================================================================
-	// Constructor
-	//===============================================================================
-
-	public LocalSolver (SudokuFile sf)
-	{
-		this.network = Converter.SudokuFileToConstraintNetwork(sf);
-		n = sf.getN();
-		sudokuGrid = sf;
-	}
-
-	//===============================================================================
-	// Accessors
-	//===============================================================================
-
-	public boolean hasSolution()
-	{
-		return isSolution();
-	}
-
-	/**
-	 * @return solution if a solution has been found, otherwise returns the unsolved puzzle.
-	 */
-	public SudokuFile getSolution()
-	{
-		return sudokuGrid;
-	}
-
-	public void printSolverStats()
-	{
-		System.out.println("Time taken:" + (endTime-startTime) + " ms");
-		System.out.println("Steps until convergence:" + numTotalAttempts + " steps");
-	}
-
-	//===============================================================================
-	// Helper Methods
-	//===============================================================================
-
-	public boolean isSolution()
-	{
-		for(Constraint c : network.getConstraints())
-		{
-			if(!c.isConsistent())
-			{
-				return false;
-			}
-		}
-		return true;
-	}
-
-	/**
-	 * Restarts the local search after a predefined number of attempts. 
-	 */
-	public void restartCounter()
-	{
-		numTotalAttempts++;
-		if (numAttempts++ > limitAttempts)
-		{
-			System.out.println("restart");
-			numAttempts = 0;
-			generateStartState();
-		}
-	}
-
-	/**
-	 * Assigns random values to each non-initial variable in the puzzle
-	 */
-	public void generateStartState()
-	{
-		for(Variable v : network.getVariables())
-		{
-			if(v.isChangeable())
-			{
-				v.assignValue((int)(Math.random()*n+1));
-			}
-		}
-	}
-
-	public void generateSuccessor()
-	{
-		List<Assignment> assignments = getAllPossibleAssignments();
-		Assignment nextAssignment = assignments.get((int)(Math.random()*assignments.size()));
-		network.pushAssignment(nextAssignment);
-	}
-	/**
-	 * @return list of all possible Variable/Value assignments in the puzzle
-	 */
-	public List<Assignment> getAllPossibleAssignments()
-	{
-		List<Assignment> assignments = new ArrayList<Assignment>();
-		for(Variable v : network.getVariables())
-		{
-			if(v.isChangeable())
-			{
-				for(int val = 1; val <= n; val++)
-				{
-					Assignment a = new Assignment (v, val);
-					assignments.add(a);
-				}
-			}
-		}
-		return assignments;
-	}
-
-	private void success()
-	{
-		endTime = System.currentTimeMillis();
-		System.out.println("Solution found!");
-		sudokuGrid = Converter.ConstraintNetworkToSudokuFile(network, sudokuGrid.getN(), sudokuGrid.getP(), sudokuGrid.getQ());
-	}
-
-	public int getNetworkScore()
-	{
-		int networkScore = 0;
-		for(Constraint c : network.getConstraints())
-		{
-			networkScore += c.getConflicts();
-		}
-		return networkScore;
-	}
-
-	//===============================================================================
-	// Solver
-	//===============================================================================
-
-	public void solve()
-	{
-		if (!Thread.currentThread().isInterrupted())
-		{
-			startTime = System.currentTimeMillis();
-			generateStartState();
-
-			while(!isSolution())
-			{
-				restartCounter();
-				generateSuccessor();
-				//int score = getNetworkScore();
-			}
-
-			success();
-		}
-	}
-
-	@Override
-	public void run() {
-		solve();
-	}
-}
+package cspSolver;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import sudoku.Converter;
+import sudoku.SudokuFile;
+
+/**
+ * Basic local search solver
+ *
+ */
+public class LocalSolver implements Runnable{
+
+	//===============================================================================
+	// Properties
+	//===============================================================================
+
+	private ConstraintNetwork network;
+	private int n;
+
+	private int numTotalAttempts; 
+	private int numAttempts = 0; //used for restarts
+	private int limitAttempts = 1000; //used for restarts
+	private int numRestarts;
+	private long startTime, endTime;
+
+	private long deadline;
+	private long stepBudget = Long.MAX_VALUE;
+	private volatile boolean cancelled;
+	private SolveOutcome stopOutcome;
+	private boolean solved;
+
+	private List<SearchListener> listeners = new ArrayList<SearchListener>();
+
+	private SudokuFile sudokuGrid;
+
+	//===============================================================================
+	// Constructor
+	//===============================================================================
+
+	public LocalSolver (SudokuFile sf)
+	{
+		this.network = Converter.SudokuFileToConstraintNetwork(sf);
+		n = sf.getN();
+		sudokuGrid = sf;
+	}
+
+	//===============================================================================
+	// Modifiers
+	//===============================================================================
+
+	public void addSearchListener(SearchListener listener)
+	{
+		listeners.add(listener);
+	}
+
+	public void removeSearchListener(SearchListener listener)
+	{
+		listeners.remove(listener);
+	}
+
+	//===============================================================================
+	// Accessors
+	//===============================================================================
+
+	public int getNumRestarts()
+	{
+		return numRestarts;
+	}
+
+	/**
+	 * @return the restart policy of the solver, e.g. "restart=1000"
+	 */
+	public String getConfiguration()
+	{
+		return "restart=" + limitAttempts;
+	}
+
+	public boolean hasSolution()
+	{
+		return isSolution();
+	}
+
+	/**
+	 * @return solution if a solution has been found, otherwise returns the unsolved puzzle.
+	 */
+	public SudokuFile getSolution()
+	{
+		return sudokuGrid;
+	}
+
+	public void printSolverStats()
+	{
+		System.out.println("Time taken:" + (endTime-startTime) / 1000000 + " ms");
+		System.out.println("Steps until convergence:" + numTotalAttempts + " steps");
+	}
+
+	//===============================================================================
+	// Helper Methods
+	//===============================================================================
+
+	public boolean isSolution()
+	{
+		for(Constraint c : network.getConstraints())
+		{
+			if(!c.isConsistent())
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Restarts the local search after a predefined number of attempts. 
+	 */
+	public void restartCounter()
+	{
+		numTotalAttempts++;
+		if (numAttempts++ > limitAttempts)
+		{
+			System.out.println("restart");
+			numAttempts = 0;
+			numRestarts++;
+			for(SearchListener l : listeners)
+			{
+				l.onRestart(numRestarts);
+			}
+			SolverEvents.RestartEvent event = SolverEvents.isRecording() ? new SolverEvents.RestartEvent() : null;
+			if(event != null && event.shouldCommit())
+			{
+				event.puzzle = sudokuGrid.getName();
+				event.n = n;
+				event.configuration = getConfiguration();
+				event.restarts = numRestarts;
+				event.steps = numTotalAttempts;
+				event.commit();
+			}
+			generateStartState();
+		}
+	}
+
+	/**
+	 * Assigns random values to each non-initial variable in the puzzle
+	 */
+	public void generateStartState()
+	{
+		for(Variable v : network.getVariables())
+		{
+			if(v.isChangeable())
+			{
+				v.assignValue((int)(Math.random()*n+1));
+			}
+		}
+	}
+
+	public void generateSuccessor()
+	{
+		List<Assignment> assignments = getAllPossibleAssignments();
+		Assignment nextAssignment = assignments.get((int)(Math.random()*assignments.size()));
+		network.pushAssignment(nextAssignment);
+	}
+	/**
+	 * @return list of all possible Variable/Value assignments in the puzzle
+	 */
+	public List<Assignment> getAllPossibleAssignments()
+	{
+		List<Assignment> assignments = new ArrayList<Assignment>();
+		for(Variable v : network.getVariables())
+		{
+			if(v.isChangeable())
+			{
+				for(int val = 1; val <= n; val++)
+				{
+					Assignment a = new Assignment (v, val);
+					assignments.add(a);
+				}
+			}
+		}
+		return assignments;
+	}
+
+	private void success()
+	{
+		solved = true;
+		System.out.println("Solution found!");
+		for(SearchListener l : listeners)
+		{
+			l.onSolution(1);
+		}
+		sudokuGrid = Converter.ConstraintNetworkToSudokuFile(network, sudokuGrid.getN(), sudokuGrid.getP(), sudokuGrid.getQ());
+	}
+
+	public int getNetworkScore()
+	{
+		int networkScore = 0;
+		for(Constraint c : network.getConstraints())
+		{
+			networkScore += c.getConflicts();
+		}
+		return networkScore;
+	}
+
+	//===============================================================================
+	// Solver
+	//===============================================================================
+
+	/**
+	 * Searches until a solution is found or timeout has passed.
+	 * @return outcome of the search, TIMEOUT if the time limit passed first
+	 */
+	public SolveResult solve(Duration timeout)
+	{
+		search(System.nanoTime() + timeout.toNanos(), Long.MAX_VALUE);
+		return getResult();
+	}
+
+	/**
+	 * Searches until a solution is found or maxSteps steps have been taken.
+	 * @return outcome of the search, BUDGET_EXHAUSTED if the budget ran out first
+	 */
+	public SolveResult solve(long maxSteps)
+	{
+		search(0, maxSteps);
+		return getResult();
+	}
+
+	/**
+	 * Asks a running search to stop. Safe to call from any thread.
+	 */
+	public void cancel()
+	{
+		cancelled = true;
+	}
+
+	/**
+	 * @return outcome and statistics of the last run, CANCELLED if there was none. 
+	 * Local search cannot prove that a puzzle has no solution, so the outcome is never UNSAT. 
+	 */
+	public SolveResult getResult()
+	{
+		SolveOutcome outcome = solved ? SolveOutcome.SOLVED : stopOutcome != null ? stopOutcome : SolveOutcome.CANCELLED;
+		return new SolveResult(outcome, solved ? sudokuGrid : null, endTime - startTime, numTotalAttempts, 0);
+	}
+
+	/**
+	 * Checked before each step. Reading the clock is only done every 256 steps.
+	 * @return true if the search has to stop because of a limit or cancellation
+	 */
+	private boolean isOutOfBudget()
+	{
+		if(cancelled || Thread.currentThread().isInterrupted())
+		{
+			stopOutcome = SolveOutcome.CANCELLED;
+		}
+		else if(numTotalAttempts >= stepBudget)
+		{
+			stopOutcome = SolveOutcome.BUDGET_EXHAUSTED;
+		}
+		else if(deadline != 0 && (numTotalAttempts & 0xFF) == 0 && System.nanoTime() - deadline > 0)
+		{
+			stopOutcome = SolveOutcome.TIMEOUT;
+		}
+		return stopOutcome != null;
+	}
+
+	/**
+	 * Searches without limits until a solution is found, cancel() is called or the 
+	 * thread is interrupted. 
+	 */
+	public void solve()
+	{
+		search(0, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Starts a new run: limits, cancellation and statistics of the previous one are cleared. 
+	 * @param deadline System.nanoTime() at which to stop, 0 for none
+	 * @param stepBudget maximum number of steps
+	 */
+	private void search(long deadline, long stepBudget)
+	{
+		this.deadline = deadline;
+		this.stepBudget = stepBudget;
+		cancelled = false;
+		stopOutcome = null;
+		solved = false;
+		numTotalAttempts = 0;
+		numAttempts = 0;
+		numRestarts = 0;
+		startTime = 0;
+		endTime = 0;
+		if (Thread.currentThread().isInterrupted())
+		{
+			stopOutcome = SolveOutcome.CANCELLED;
+		}
+		else
+		{
+			SolverEvents.SolveEvent event = SolverEvents.isRecording() ? new SolverEvents.SolveEvent() : null;
+			if(event != null)
+			{
+				event.begin();
+			}
+			SolverEvents.Sample sample = SolverEvents.startSampling(sudokuGrid.getName(), n, "LocalSolver", getConfiguration(), () -> numTotalAttempts);
+			try
+			{
+				startTime = System.nanoTime();
+				generateStartState();
+
+				while(!isSolution())
+				{
+					if(isOutOfBudget())
+					{
+						break;
+					}
+					restartCounter();
+					generateSuccessor();
+					//int score = getNetworkScore();
+				}
+
+				if(stopOutcome == null)
+				{
+					success();
+				}
+			}finally
+			{
+				endTime = System.nanoTime();
+				SolverEvents.stopSampling(sample);
+			}
+			if(event != null)
+			{
+				event.end();
+				if(event.shouldCommit())
+				{
+					event.puzzle = sudokuGrid.getName();
+					event.n = n;
+					event.solver = "LocalSolver";
+					event.configuration = getConfiguration();
+					event.solved = solved;
+					event.assignments = numTotalAttempts;
+					event.commit();
+				}
+			}
+		}
+	}
+
+	@Override
+	public void run() {
+		solve();
+	}
+}
@@ -0,0 +1,238 @@
+package cspSolver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs registered propagators on the modified constraints of a network until no domain
+ * changes. Every propagator has its own queue of constraints, each constraint queued at
+ * most once. The queues are ordered by cost class, then registration order, and the
+ * engine always serves the first non-empty one, so the cheap propagators reach their
+ * fixpoint before an expensive one runs. Counts invocations, pruned values and failures
+ * per propagator.
+ */
+public class PropagationEngine {
+
+	//===============================================================================
+	// Properties
+	//===============================================================================
+
+	private final ConstraintNetwork network;
+	private final List<Propagator> propagators = new ArrayList<Propagator>();
+
+	//queue of each propagator: ring buffer of constraint indices
+	private int[][] queues = new int[0][];
+	private boolean[][] queued = new boolean[0][];
+	private int[] heads = new int[0];
+	private int[] counts = new int[0];
+
+	private long[] invocations = new long[0];
+	private long[] prunings = new long[0];
+	private long[] failures = new long[0];
+	private long totalInvocations;
+
+	//===============================================================================
+	// Constructors
+	//===============================================================================
+
+	public PropagationEngine(ConstraintNetwork network)
+	{
+		this.network = network;
+	}
+
+	//===============================================================================
+	// Modifiers
+	//===============================================================================
+
+	/**
+	 * Adds a propagator after the registered ones of the same or a cheaper cost class.
+	 * Statistics are reset.
+	 */
+	public void register(Propagator p)
+	{
+		int pos = propagators.size();
+		while(pos > 0 && propagators.get(pos - 1).getCostClass() > p.getCostClass())
+		{
+			pos--;
+		}
+		propagators.add(pos, p);
+
+		int n = propagators.size();
+		int numConstraints = network.getConstraints().size();
+		queues = new int[n][numConstraints];
+		queued = new boolean[n][numConstraints];
+		heads = new int[n];
+		counts = new int[n];
+		resetStatistics();
+	}
+
+	/**
+	 * Sets all counters to zero.
+	 */
+	public void resetStatistics()
+	{
+		int n = propagators.size();
+		invocations = new long[n];
+		prunings = new long[n];
+		failures = new long[n];
+		totalInvocations = 0;
+	}
+
+	//===============================================================================
+	// Accessors
+	//===============================================================================
+
+	/**
+	 * @return registered propagators in scheduling order
+	 */
+	public List<Propagator> getPropagators()
+	{
+		return Collections.unmodifiableList(propagators);
+	}
+
+	/**
+	 * @return number of times p was run on a constraint
+	 */
+	public long getInvocations(Propagator p)
+	{
+		return invocations[propagators.indexOf(p)];
+	}
+
+	/**
+	 * @return number of values p removed from domains
+	 */
+	public long getPrunings(Propagator p)
+	{
+		return prunings[propagators.indexOf(p)];
+	}
+
+	/**
+	 * @return number of times p found a constraint unsatisfiable
+	 */
+	public long getFailures(Propagator p)
+	{
+		return failures[propagators.indexOf(p)];
+	}
+
+	/**
+	 * @return number of propagator runs of all propagators
+	 */
+	public long getTotalInvocations()
+	{
+		return totalInvocations;
+	}
+
+	//===============================================================================
+	// Propagation
+	//===============================================================================
+
+	/**
+	 * Propagates the constraints modified since the last call to a fixpoint.
+	 * @return false if a propagator failed, true otherwise
+	 */
+	public boolean propagate()
+	{
+		schedule(network.getModifiedConstraints());
+		List<Constraint> constraints = network.getConstraints();
+		int n = propagators.size();
+		while(true)
+		{
+			int p = 0;
+			while(p < n && counts[p] == 0)
+			{
+				p++;
+			}
+			if(p == n)
+			{
+				return true;
+			}
+
+			int index = queues[p][heads[p]];
+			heads[p] = (heads[p] + 1) % queues[p].length;
+			counts[p]--;
+			queued[p][index] = false;
+
+			Constraint c = constraints.get(index);
+			int before = domainSizes(c);
+			invocations[p]++;
+			totalInvocations++;
+			if(!propagators.get(p).propagate(c))
+			{
+				failures[p]++;
+				clear();
+				return false;
+			}
+			prunings[p] += before - domainSizes(c);
+			schedule(network.getModifiedConstraints());
+		}
+	}
+
+	/**
+	 * Empties the queues, e.g. after a failure.
+	 */
+	public void clear()
+	{
+		for(int p = 0; p < propagators.size(); p++)
+		{
+			while(counts[p] > 0)
+			{
+				queued[p][queues[p][heads[p]]] = false;
+				heads[p] = (heads[p] + 1) % queues[p].length;
+				counts[p]--;
+			}
+		}
+	}
+
+	//===============================================================================
+	// Helper Methods
+	//===============================================================================
+
+	private void schedule(List<Constraint> modified)
+	{
+		for(Constraint c : modified)
+		{
+			int index = c.getIndex();
+			for(int p = 0; p < propagators.size(); p++)
+			{
+				if(!queued[p][index])
+				{
+					queued[p][index] = true;
+					queues[p][(heads[p] + counts[p]) % queues[p].length] = index;
+					counts[p]++;
+				}
+			}
+		}
+	}
+
+	private static int domainSizes(Constraint c)
+	{
+		int sum = 0;
+		for(Variable var : c.vars)
+		{
+			sum += var.size();
+		}
+		return sum;
+	}
+
+	//===============================================================================
+	// String representation
+	//===============================================================================
+
+	/**
+	 * @return one line per propagator with its cost class and counters
+	 */
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder();
+		for(int p = 0; p < propagators.size(); p++)
+		{
+			Propagator prop = propagators.get(p);
+			sb.append(prop.getName()).append(" (cost ").append(prop.getCostClass()).append("): ")
+				.append(invocations[p]).append(" invocations, ")
+				.append(prunings[p]).append(" values pruned, ")
+				.append(failures[p]).append(" failures\n");
+		}
+		return sb.toString();
+	}
+}
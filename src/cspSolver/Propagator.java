@@ -0,0 +1,36 @@
+package cspSolver;
+
+/**
+ * Filtering algorithm run on a single constraint by a PropagationEngine. Propagators 
+ * remove values through the Variable methods, so their changes are recorded on the 
+ * trail and queue the constraints of the modified variables. 
+ * 
+ * The cost class orders the propagators in the engine: queued work of a cheaper class 
+ * always runs first, so expensive propagators only see domains at the fixpoint of the 
+ * cheap ones. 
+ * 
+ * @see StandardPropagator
+ */
+public interface Propagator {
+
+	int LINEAR = 1;
+	int QUADRATIC = 2;
+	int CUBIC = 3;
+	int EXPENSIVE = 4;
+
+	/**
+	 * @return name used in statistics
+	 */
+	String getName();
+
+	/**
+	 * @return cost class, LINEAR for the cheapest propagators
+	 */
+	int getCostClass();
+
+	/**
+	 * Filters the domains of the constraint's variables.
+	 * @return false if the constraint can no longer be satisfied
+	 */
+	boolean propagate(Constraint c);
+}
@@ -0,0 +1,47 @@
+package cspSolver;
+
+/**
+ * Receives search events from a solver. All methods do nothing by default, so a 
+ * listener only needs to override the events it is interested in. 
+ * Listeners are called on the solver's thread and should return quickly. 
+ * 
+ * @see BTSolver#addSearchListener(SearchListener)
+ * @see LocalSolver#addSearchListener(SearchListener)
+ */
+public interface SearchListener {
+
+	/**
+	 * A value has been tried for a variable.
+	 * @param depth number of decisions above this one
+	 */
+	default void onDecision(Variable v, int value, int depth) {}
+
+	/**
+	 * A consistency check has run after a decision.
+	 * @param numConstraints number of constraints propagated by the check
+	 * @param nanos time spent in the check
+	 */
+	default void onPropagation(int depth, int numConstraints, long nanos) {}
+
+	/**
+	 * The consistency check after a decision failed.
+	 */
+	default void onWipeout(Variable v, int value, int depth) {}
+
+	/**
+	 * A decision has been undone.
+	 */
+	default void onBacktrack(Variable v, int value, int depth) {}
+
+	/**
+	 * A local search has restarted from a new random state.
+	 * @param numRestarts restarts so far, including this one
+	 */
+	default void onRestart(int numRestarts) {}
+
+	/**
+	 * A solution has been found.
+	 * @param numSolutions solutions found so far, including this one
+	 */
+	default void onSolution(long numSolutions) {}
+}
@@ -0,0 +1,516 @@
+package cspSolver;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+import sudoku.CanonicalForm;
+import sudoku.SudokuFile;
+
+/**
+ * Bounded cache of solve results in front of a solver, safe to share between threads.
+ *
+ * Entries are keyed by the 128 bit hash of the puzzle (SudokuFile#hash128), or of its
+ * canonical form if canonical keys are enabled, so that isomorphic puzzles share one
+ * entry at the price of canonicalizing on every lookup. Canonicalizing is given a small
+ * node budget, well under a millisecond, and sparse puzzles that exceed it are keyed exactly,
+ * so a lookup never costs more than a fast solve. The least recently used entry
+ * is evicted once the capacity is reached. Only final outcomes, SOLVED and UNSAT, are
+ * cached; limits and cancellations are not.
+ *
+ * With a segment file every new entry is also appended to the file, and the file is
+ * replayed when the cache is created. Each record carries a CRC, so a record torn by a
+ * crash is detected and cut off. The file keeps growing with evicted entries until
+ * compact() rewrites it with the entries in memory.
+ */
+public class SolutionCache implements Closeable {
+
+	//===============================================================================
+	// Properties
+	//===============================================================================
+
+	//nodes of the canonical form search per lookup, enough for all but near empty boards
+	private static final long CANONICAL_NODE_BUDGET = 1000;
+
+	private final int capacity;
+	private final boolean canonicalKeys;
+	private final LinkedHashMap<Key, Entry> entries;
+	private File segment;
+	private RandomAccessFile out;
+
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	//===============================================================================
+	// Constructors
+	//===============================================================================
+
+	/**
+	 * Cache in memory only, keyed by the exact puzzle.
+	 */
+	public SolutionCache(int capacity)
+	{
+		this(capacity, false);
+	}
+
+	public SolutionCache(int capacity, boolean canonicalKeys)
+	{
+		if(capacity < 1)
+		{
+			throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		}
+		this.capacity = capacity;
+		this.canonicalKeys = canonicalKeys;
+		this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest)
+			{
+				if(size() > SolutionCache.this.capacity)
+				{
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Cache persisted to an append-only segment file. Entries already in the file are
+	 * loaded, the most recent ones if there are more than capacity.
+	 * @param segment file to load from and append to, created if it does not exist
+	 * @throws IOException if the file cannot be read or opened for writing
+	 */
+	public SolutionCache(int capacity, boolean canonicalKeys, File segment) throws IOException
+	{
+		this(capacity, canonicalKeys);
+		this.segment = segment;
+		out = new RandomAccessFile(segment, "rw");
+		load();
+		evictions = 0;
+	}
+
+	//===============================================================================
+	// Lookup
+	//===============================================================================
+
+	/**
+	 * @return the cached result for the puzzle, with the statistics of the run that
+	 *         produced it, or null on a miss
+	 */
+	public SolveResult get(SudokuFile sf)
+	{
+		return get(sf, keyOf(sf));
+	}
+
+	/**
+	 * Caches the result for the puzzle if its outcome is final.
+	 */
+	public void put(SudokuFile sf, SolveResult result)
+	{
+		put(keyOf(sf), result);
+	}
+
+	/**
+	 * Returns the cached result for the puzzle, or solves it and caches the result.
+	 * Concurrent misses on the same puzzle are all solved.
+	 * @param solver solves a puzzle, e.g. {@code sf -> new BTSolver(sf).solve(sf)}
+	 */
+	public SolveResult solve(SudokuFile sf, Function<SudokuFile, SolveResult> solver)
+	{
+		Key key = keyOf(sf);
+		SolveResult result = get(sf, key);
+		if(result == null)
+		{
+			result = solver.apply(sf);
+			put(key, result);
+		}
+		return result;
+	}
+
+	private SolveResult get(SudokuFile sf, Key key)
+	{
+		Entry entry;
+		synchronized(this)
+		{
+			entry = entries.get(key);
+			if(entry == null)
+			{
+				misses++;
+				return null;
+			}
+			hits++;
+		}
+		SudokuFile solution = null;
+		if(entry.board != null)
+		{
+			solution = new SudokuFile(entry.N, entry.p, entry.q, copy(entry.board));
+			if(key.form != null)
+			{
+				solution = key.form.toOriginal(solution);
+			}
+			solution.setName(sf.getName());
+		}
+		return new SolveResult(entry.outcome, solution, entry.timeTakenNanos, entry.numAssignments, entry.numBacktracks);
+	}
+
+	private void put(Key key, SolveResult result)
+	{
+		if(result.getOutcome() != SolveOutcome.SOLVED && result.getOutcome() != SolveOutcome.UNSAT)
+		{
+			return;
+		}
+		SudokuFile solution = result.getSolution();
+		if(solution != null && key.form != null)
+		{
+			solution = key.form.toCanonical(solution);
+		}
+		Entry entry = new Entry(result, solution);
+		synchronized(this)
+		{
+			if(entries.put(key, entry) == null && out != null)
+			{
+				append(key, entry);
+			}
+		}
+	}
+
+	//===============================================================================
+	// Accessors
+	//===============================================================================
+
+	public synchronized int size()
+	{
+		return entries.size();
+	}
+
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	public synchronized long getHits()
+	{
+		return hits;
+	}
+
+	public synchronized long getMisses()
+	{
+		return misses;
+	}
+
+	public synchronized long getEvictions()
+	{
+		return evictions;
+	}
+
+	/**
+	 * Empties the cache in memory and sets the counters to zero. The segment file is kept.
+	 */
+	public synchronized void clear()
+	{
+		entries.clear();
+		hits = 0;
+		misses = 0;
+		evictions = 0;
+	}
+
+	public synchronized String toString()
+	{
+		return "SolutionCache: " + entries.size() + "/" + capacity + " entries, " + hits + " hits, " + misses + " misses, " + evictions + " evictions";
+	}
+
+	//===============================================================================
+	// Segment file
+	//===============================================================================
+
+	/**
+	 * Rewrites the segment file with the entries in memory, dropping evicted ones.
+	 * The new file replaces the old one atomically where the file system supports it.
+	 */
+	public synchronized void compact() throws IOException
+	{
+		if(out == null)
+		{
+			return;
+		}
+		File tmp = new File(segment.getPath() + ".tmp");
+		try(RandomAccessFile compacted = new RandomAccessFile(tmp, "rw"))
+		{
+			compacted.setLength(0);
+			//oldest first, so that a reload keeps the most recently used entries
+			for(Map.Entry<Key, Entry> e : entries.entrySet())
+			{
+				compacted.write(encode(e.getKey(), e.getValue()));
+			}
+			compacted.getFD().sync();
+		}
+		out.close();
+		out = null;
+		Files.move(tmp.toPath(), segment.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		out = new RandomAccessFile(segment, "rw");
+		out.seek(out.length());
+	}
+
+	/**
+	 * Forces the appended entries to the disk.
+	 */
+	public synchronized void sync() throws IOException
+	{
+		if(out != null)
+		{
+			out.getFD().sync();
+		}
+	}
+
+	/**
+	 * Syncs and closes the segment file. The cache keeps working in memory.
+	 */
+	public synchronized void close() throws IOException
+	{
+		if(out != null)
+		{
+			out.getFD().sync();
+			out.close();
+			out = null;
+		}
+	}
+
+	/**
+	 * Record: int length, payload, int CRC32 of the payload. Payload: hash high and low,
+	 * outcome, time, assignments, backtracks, N, p, q, then the N*N cells of the
+	 * solution if there is one.
+	 */
+	private static byte[] encode(Key key, Entry entry) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream payload = new DataOutputStream(bytes);
+		payload.writeLong(key.high);
+		payload.writeLong(key.low);
+		payload.writeByte(entry.outcome.ordinal());
+		payload.writeLong(entry.timeTakenNanos);
+		payload.writeLong(entry.numAssignments);
+		payload.writeLong(entry.numBacktracks);
+		payload.writeInt(entry.N);
+		payload.writeInt(entry.p);
+		payload.writeInt(entry.q);
+		payload.writeBoolean(entry.board != null);
+		if(entry.board != null)
+		{
+			for(int[] row : entry.board)
+			{
+				for(int value : row)
+				{
+					payload.writeInt(value);
+				}
+			}
+		}
+		payload.flush();
+		byte[] data = bytes.toByteArray();
+		CRC32 crc = new CRC32();
+		crc.update(data);
+
+		ByteArrayOutputStream record = new ByteArrayOutputStream(data.length + 8);
+		DataOutputStream framed = new DataOutputStream(record);
+		framed.writeInt(data.length);
+		framed.write(data);
+		framed.writeInt((int) crc.getValue());
+		framed.flush();
+		return record.toByteArray();
+	}
+
+	/**
+	 * Appends an entry. A failed write closes the segment, the cache goes on in memory.
+	 */
+	private void append(Key key, Entry entry)
+	{
+		try
+		{
+			out.write(encode(key, entry));
+		}
+		catch(IOException e)
+		{
+			System.err.println("Solution cache: cannot append to " + segment + ", persistence disabled: " + e);
+			try
+			{
+				out.close();
+			}
+			catch(IOException ignored)
+			{
+			}
+			out = null;
+		}
+	}
+
+	/**
+	 * Replays the segment file and cuts off a torn or corrupt tail.
+	 */
+	private void load() throws IOException
+	{
+		long valid = 0;
+		long length = out.length();
+		out.seek(0);
+		while(valid < length)
+		{
+			try
+			{
+				int size = out.readInt();
+				if(size < 0 || valid + 8 + size > length)
+				{
+					break;
+				}
+				byte[] data = new byte[size];
+				out.readFully(data);
+				CRC32 crc = new CRC32();
+				crc.update(data);
+				if(out.readInt() != (int) crc.getValue())
+				{
+					break;
+				}
+				decode(data);
+				valid += 8 + size;
+			}
+			catch(EOFException e)
+			{
+				break;
+			}
+		}
+		if(valid < length)
+		{
+			System.err.println("Solution cache: dropping " + (length - valid) + " corrupt bytes at the end of " + segment);
+			out.setLength(valid);
+		}
+		out.seek(valid);
+	}
+
+	private void decode(byte[] data) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+		Key key = new Key(in.readLong(), in.readLong(), null);
+		Entry entry = new Entry();
+		entry.outcome = SolveOutcome.values()[in.readByte()];
+		entry.timeTakenNanos = in.readLong();
+		entry.numAssignments = in.readLong();
+		entry.numBacktracks = in.readLong();
+		entry.N = in.readInt();
+		entry.p = in.readInt();
+		entry.q = in.readInt();
+		if(in.readBoolean())
+		{
+			entry.board = new int[entry.N][entry.N];
+			for(int[] row : entry.board)
+			{
+				for(int j = 0; j < row.length; j++)
+				{
+					row[j] = in.readInt();
+				}
+			}
+		}
+		entries.put(key, entry);
+	}
+
+	//===============================================================================
+	// Helper Methods
+	//===============================================================================
+
+	/**
+	 * Canonical keys fall back to the exact puzzle for killer sudokus and for puzzles
+	 * whose canonical form runs out of its node budget. The two kinds of keys cannot
+	 * conflict: an exact key equal to a canonical key is the hash of the same board.
+	 */
+	private Key keyOf(SudokuFile sf)
+	{
+		if(canonicalKeys && sf.getCages().isEmpty())
+		{
+			CanonicalForm form = CanonicalForm.canonicalize(sf, CANONICAL_NODE_BUDGET);
+			if(form != null)
+			{
+				return new Key(form.getHashHigh(), form.getHashLow(), form);
+			}
+		}
+		long[] hash = sf.hash128();
+		return new Key(hash[0], hash[1], null);
+	}
+
+	private static int[][] copy(int[][] board)
+	{
+		int[][] copy = new int[board.length][];
+		for(int i = 0; i < board.length; i++)
+		{
+			copy[i] = board[i].clone();
+		}
+		return copy;
+	}
+
+	/**
+	 * 128 bit hash of a puzzle; the canonical form a lookup was made with, if any, maps
+	 * the cached solution back. It is not part of equality.
+	 */
+	private static final class Key {
+
+		final long high;
+		final long low;
+		final CanonicalForm form;
+
+		Key(long high, long low, CanonicalForm form)
+		{
+			this.high = high;
+			this.low = low;
+			this.form = form;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			return o instanceof Key && ((Key) o).high == high && ((Key) o).low == low;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return (int) (low ^ (low >>> 32));
+		}
+	}
+
+	private static final class Entry {
+
+		SolveOutcome outcome;
+		int N, p, q;
+		int[][] board;
+		long timeTakenNanos;
+		long numAssignments;
+		long numBacktracks;
+
+		Entry()
+		{
+		}
+
+		Entry(SolveResult result, SudokuFile solution)
+		{
+			outcome = result.getOutcome();
+			timeTakenNanos = result.getTimeTakenNanos();
+			numAssignments = result.getNumAssignments();
+			numBacktracks = result.getNumBacktracks();
+			if(solution != null)
+			{
+				N = solution.getN();
+				p = solution.getP();
+				q = solution.getQ();
+				board = copy(solution.getBoard());
+			}
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package cspSolver;
+
+import java.lang.ref.Cleaner;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Semaphore;
+
+import sudoku.SudokuFile;
+
+/**
+ * Lazy iterator over the solutions of a BTSolver. The search runs on its own thread 
+ * and is suspended at each solution until the next one is requested, so solutions are 
+ * only searched for and converted as they are consumed. 
+ * 
+ * Closing the iterator stops the search. An iterator that is dropped without being 
+ * closed stops its search once it has been garbage collected. 
+ * 
+ * @see BTSolver#solutions()
+ */
+public class SolutionIterator implements Iterator<SudokuFile>, AutoCloseable {
+
+	//===============================================================================
+	// Properties
+	//===============================================================================
+
+	private static final Cleaner CLEANER = Cleaner.create();
+
+	private final BTSolver solver;
+	final Handoff handoff;
+	private final Cleaner.Cleanable cleanable;
+	private boolean started;
+	private boolean pending;
+
+	//===============================================================================
+	// Constructors
+	//===============================================================================
+
+	SolutionIterator(final BTSolver solver)
+	{
+		this.solver = solver;
+		this.handoff = new Handoff(solver);
+		this.cleanable = CLEANER.register(this, handoff);
+	}
+
+	//===============================================================================
+	// Iterator
+	//===============================================================================
+
+	/**
+	 * Resumes the search if the previous solution has been consumed and waits for the next one.
+	 */
+	@Override
+	public boolean hasNext()
+	{
+		if(pending)
+		{
+			return true;
+		}
+		if(handoff.finished || handoff.closed)
+		{
+			return false;
+		}
+		if(!started)
+		{
+			started = true;
+			handoff.search.start();
+		}
+		else
+		{
+			handoff.resume.release();
+		}
+		handoff.ready.acquireUninterruptibly();
+		pending = !handoff.finished;
+		return pending;
+	}
+
+	@Override
+	public SudokuFile next()
+	{
+		if(!hasNext())
+		{
+			throw new NoSuchElementException();
+		}
+		pending = false;
+		return solver.currentSolution();
+	}
+
+	/**
+	 * Stops the search. Safe to call more than once.
+	 */
+	@Override
+	public void close()
+	{
+		pending = false;
+		cleanable.clean();
+	}
+
+	//===============================================================================
+	// Search Thread
+	//===============================================================================
+
+	/**
+	 * State shared between the consumer and the search thread. Doubles as the cleanup 
+	 * action, so it must not refer back to the iterator. 
+	 */
+	static class Handoff implements Runnable {
+
+		private final Semaphore ready = new Semaphore(0);
+		private final Semaphore resume = new Semaphore(0);
+		private final Thread search;
+		private volatile boolean finished;
+		private volatile boolean closed;
+
+		Handoff(final BTSolver solver)
+		{
+			this.search = new Thread(new Runnable(){
+				@Override
+				public void run() {
+					solver.solve();
+					searchFinished();
+				}
+			}, "BTSolver-solutions");
+			search.setDaemon(true);
+		}
+
+		/**
+		 * Called on the search thread for every solution. Blocks until the consumer asks 
+		 * for the next solution. 
+		 * @return false if the search should stop
+		 */
+		boolean solutionFound()
+		{
+			ready.release();
+			try
+			{
+				resume.acquire();
+			}catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				return false;
+			}
+			return !closed;
+		}
+
+		/**
+		 * Called on the search thread once the search space is exhausted or the search stopped.
+		 */
+		void searchFinished()
+		{
+			finished = true;
+			ready.release();
+		}
+
+		@Override
+		public void run()
+		{
+			closed = true;
+			search.interrupt();
+			resume.release();
+		}
+	}
+}
@@ -0,0 +1,378 @@
+package cspSolver;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import sudoku.SudokuFile;
+
+/**
+ * Runs many solve requests at once, each as one task that loads its puzzle, looks it up
+ * in an optional SolutionCache and solves it, all within a deadline counted from
+ * submission. Solving is limited to parallelism tasks at a time by a semaphore, and so
+ * are cache lookups, which may canonicalize the puzzle, by a second one; loading holds
+ * no permit. A request that does not get a permit before its deadline ends with TIMEOUT
+ * without being solved. Solvers are kept and reset
+ * for the next request, at most one per permit.
+ *
+ * Each task runs on its own virtual thread when the JVM has them (Java 21 and later), so
+ * tens of thousands of requests waiting for input, the cache or a permit cost no OS
+ * threads. Older JVMs run the tasks on a fixed pool of parallelism threads instead:
+ * waiting requests sit in the pool's queue and only time out when they start, and
+ * loading blocks a solver thread.
+ *
+ * Cancelling a returned future interrupts its task; a running search then ends with
+ * CANCELLED.
+ */
+public class SolveExecutor implements AutoCloseable {
+
+	//===============================================================================
+	// Properties
+	//===============================================================================
+
+	private final int parallelism;
+	private final ExecutorService tasks;
+	private final boolean virtualThreads;
+	private final Semaphore permits;
+	private final Semaphore lookupPermits;
+	private final Queue<BTSolver> idleSolvers = new ConcurrentLinkedQueue<BTSolver>();
+	private final SolverSelector selector;
+	private final SolutionCache cache;
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	//===============================================================================
+	// Constructors
+	//===============================================================================
+
+	public SolveExecutor(int parallelism)
+	{
+		this(parallelism, null, null);
+	}
+
+	/**
+	 * @param parallelism maximum number of puzzles solved at the same time
+	 * @param selector picks the configuration of requests that do not name one, null for the default
+	 * @param cache results cache, null for none
+	 */
+	public SolveExecutor(int parallelism, SolverSelector selector, SolutionCache cache)
+	{
+		if(parallelism < 1)
+		{
+			throw new IllegalArgumentException("parallelism " + parallelism);
+		}
+		this.parallelism = parallelism;
+		this.selector = selector == null ? new SolverSelector() : selector;
+		this.cache = cache;
+		this.permits = new Semaphore(parallelism);
+		this.lookupPermits = new Semaphore(parallelism);
+		ExecutorService virtual = newVirtualThreadExecutor();
+		this.virtualThreads = virtual != null;
+		this.tasks = virtual != null ? virtual : Executors.newFixedThreadPool(parallelism);
+	}
+
+	/**
+	 * Looked up by reflection so the solver still builds and runs on Java 17.
+	 * @return an executor starting a virtual thread per task, null if there are none
+	 */
+	private static ExecutorService newVirtualThreadExecutor()
+	{
+		try
+		{
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch(ReflectiveOperationException | RuntimeException e)
+		{
+			//no such method, or a preview feature that is not enabled
+			return null;
+		}
+	}
+
+	//===============================================================================
+	// Requests
+	//===============================================================================
+
+	/**
+	 * Solves the puzzle with the configuration chosen by the selector.
+	 */
+	public CompletableFuture<SolveResult> submit(SudokuFile sf, Duration timeout)
+	{
+		return submit(() -> sf, null, timeout);
+	}
+
+	/**
+	 * Loads a puzzle and solves it. The future completes exceptionally if source fails.
+	 * @param source loads the puzzle, e.g. from a file or a connection; it runs on the
+	 *        request's thread without holding a permit
+	 * @param configuration solver configuration, see BTSolver.setConfiguration, null
+	 *        to use the selector
+	 * @param timeout time limit of the whole request, from now
+	 */
+	public CompletableFuture<SolveResult> submit(Callable<SudokuFile> source, String configuration, Duration timeout)
+	{
+		Request request = new Request(source, configuration, timeout);
+		inFlight.incrementAndGet();
+		try
+		{
+			tasks.execute(request);
+		}
+		catch(RuntimeException e)
+		{
+			inFlight.decrementAndGet();
+			throw e;
+		}
+		request.result.whenComplete((r, e) -> {
+			inFlight.decrementAndGet();
+			if(request.result.isCancelled())
+			{
+				request.interrupt();
+			}
+		});
+		return request.result;
+	}
+
+	/**
+	 * Solves on the request's thread once it has a permit.
+	 */
+	private SolveResult solve(SudokuFile sf, String configuration, long start, long deadline)
+	{
+		SolveResult refused = acquire(permits, start, deadline);
+		if(refused != null)
+		{
+			return refused;
+		}
+		BTSolver solver = idleSolvers.poll();
+		try
+		{
+			if(solver == null)
+			{
+				solver = new BTSolver(sf);
+			}
+			else
+			{
+				solver.reset(sf);
+			}
+			solver.setConfiguration(configuration != null ? configuration : selector.select(sf));
+			return solver.solve(Duration.ofNanos(Math.max(1, deadline - System.nanoTime())));
+		}
+		finally
+		{
+			if(solver != null)
+			{
+				idleSolvers.offer(solver);
+			}
+			permits.release();
+		}
+	}
+
+	/**
+	 * Looks the puzzle up in the cache once it has a lookup permit, and solves it on a
+	 * miss. The lookup permit is given back before waiting for a solve permit.
+	 */
+	private SolveResult lookUpAndSolve(SudokuFile sf, String configuration, long start, long deadline)
+	{
+		SolveResult refused = acquire(lookupPermits, start, deadline);
+		if(refused != null)
+		{
+			return refused;
+		}
+		boolean[] looking = { true };
+		try
+		{
+			return cache.solve(sf, s -> {
+				looking[0] = false;
+				lookupPermits.release();
+				return solve(s, configuration, start, deadline);
+			});
+		}
+		finally
+		{
+			if(looking[0])
+			{
+				lookupPermits.release();
+			}
+		}
+	}
+
+	/**
+	 * Waits for a permit until the deadline.
+	 * @return null once the permit is acquired, otherwise the TIMEOUT or CANCELLED result
+	 *         of the request
+	 */
+	private static SolveResult acquire(Semaphore semaphore, long start, long deadline)
+	{
+		try
+		{
+			long remaining = deadline - System.nanoTime();
+			if(remaining <= 0 || !semaphore.tryAcquire(remaining, TimeUnit.NANOSECONDS))
+			{
+				return new SolveResult(SolveOutcome.TIMEOUT, null, System.nanoTime() - start, 0, 0);
+			}
+			return null;
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return new SolveResult(SolveOutcome.CANCELLED, null, System.nanoTime() - start, 0, 0);
+		}
+	}
+
+	//===============================================================================
+	// Lifecycle
+	//===============================================================================
+
+	/**
+	 * Stops accepting requests; the submitted ones still run.
+	 */
+	public void shutdown()
+	{
+		tasks.shutdown();
+	}
+
+	/**
+	 * Stops accepting requests and interrupts the submitted ones, which end with
+	 * CANCELLED unless already done.
+	 */
+	public void shutdownNow()
+	{
+		for(Runnable r : tasks.shutdownNow())
+		{
+			Request request = (Request) r;
+			request.result.complete(new SolveResult(SolveOutcome.CANCELLED, null, System.nanoTime() - request.start, 0, 0));
+		}
+	}
+
+	public boolean awaitTermination(Duration timeout) throws InterruptedException
+	{
+		return tasks.awaitTermination(timeout.toNanos(), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Stops accepting requests and waits for the submitted ones. If interrupted while
+	 * waiting, cancels them instead.
+	 */
+	public void close()
+	{
+		shutdown();
+		try
+		{
+			while(!tasks.awaitTermination(1, TimeUnit.DAYS))
+			{
+			}
+		}
+		catch(InterruptedException e)
+		{
+			shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	//===============================================================================
+	// Accessors
+	//===============================================================================
+
+	public int getParallelism()
+	{
+		return parallelism;
+	}
+
+	/**
+	 * @return true if each request runs on its own virtual thread
+	 */
+	public boolean usesVirtualThreads()
+	{
+		return virtualThreads;
+	}
+
+	/**
+	 * @return number of requests submitted and not yet completed
+	 */
+	public int getInFlight()
+	{
+		return inFlight.get();
+	}
+
+	/**
+	 * @return number of puzzles being solved
+	 */
+	public int getSolving()
+	{
+		return parallelism - permits.availablePermits();
+	}
+
+	//===============================================================================
+	// Request
+	//===============================================================================
+
+	private class Request implements Runnable {
+
+		final CompletableFuture<SolveResult> result = new CompletableFuture<SolveResult>();
+		final Callable<SudokuFile> source;
+		final String configuration;
+		final long start;
+		final long deadline;
+
+		//thread running the request, only set while it does
+		private Thread thread;
+
+		Request(Callable<SudokuFile> source, String configuration, Duration timeout)
+		{
+			this.source = source;
+			this.configuration = configuration;
+			this.start = System.nanoTime();
+			this.deadline = start + timeout.toNanos();
+		}
+
+		@Override
+		public void run()
+		{
+			synchronized(this)
+			{
+				if(result.isDone())
+				{
+					return;
+				}
+				thread = Thread.currentThread();
+			}
+			try
+			{
+				SudokuFile sf = source.call();
+				if(cache == null)
+				{
+					result.complete(solve(sf, configuration, start, deadline));
+				}
+				else
+				{
+					result.complete(lookUpAndSolve(sf, configuration, start, deadline));
+				}
+			}
+			catch(Throwable t)
+			{
+				result.completeExceptionally(t);
+			}
+			finally
+			{
+				synchronized(this)
+				{
+					thread = null;
+					//a late interrupt must not reach the next task of a pooled thread
+					Thread.interrupted();
+				}
+			}
+		}
+
+		synchronized void interrupt()
+		{
+			if(thread != null)
+			{
+				thread.interrupt();
+			}
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package cspSolver;
+
+/**
+ * How a solver run ended.
+ * 
+ * @see SolveResult
+ */
+public enum SolveOutcome {
+	/** A solution was found. */
+	SOLVED,
+	/** The search space was exhausted without finding a solution. */
+	UNSAT,
+	/** The time limit passed before the search finished. */
+	TIMEOUT,
+	/** The node budget was used up before the search finished. */
+	BUDGET_EXHAUSTED,
+	/** The solver was cancelled or its thread interrupted. */
+	CANCELLED
+}
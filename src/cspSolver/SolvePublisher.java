@@ -0,0 +1,376 @@
+package cspSolver;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import sudoku.SudokuBoardReader;
+import sudoku.SudokuFile;
+
+/**
+ * Reactive solving: a Flow.Publisher of the results of solving the puzzles of another
+ * publisher, or of the files of a directory, on a SolveExecutor.
+ *
+ * Puzzles are only requested from the source as results are requested downstream, and
+ * never more than twice the executor's parallelism at a time, so a slow subscriber holds
+ * back reading instead of filling memory. Results are emitted as the puzzles are solved,
+ * not in source order; solutions keep the name of their puzzle. Cancelling a subscription
+ * cancels the source and the puzzles being solved. An error of the source or of a solve
+ * is passed on at once, cancelling the rest.
+ *
+ * Each subscriber gets its own subscription to the source. The executor is not closed.
+ */
+public class SolvePublisher implements Flow.Publisher<SolveResult> {
+
+	//===============================================================================
+	// Properties
+	//===============================================================================
+
+	private final Flow.Publisher<SudokuFile> source;
+	private final SolveExecutor executor;
+	private final String configuration;
+	private final Duration timeout;
+	private final int maxInFlight;
+
+	//===============================================================================
+	// Constructors
+	//===============================================================================
+
+	/**
+	 * @param source puzzles to solve
+	 * @param executor runs the solves
+	 * @param configuration solver configuration, null to let the executor's selector choose
+	 * @param timeout time limit of each puzzle
+	 */
+	public SolvePublisher(Flow.Publisher<SudokuFile> source, SolveExecutor executor, String configuration, Duration timeout)
+	{
+		this.source = source;
+		this.executor = executor;
+		this.configuration = configuration;
+		this.timeout = timeout;
+		this.maxInFlight = 2 * executor.getParallelism();
+	}
+
+	/**
+	 * Solves the puzzle files of a directory, in name order. Files are read as they are
+	 * requested; files that are not puzzles, e.g. a README, are skipped.
+	 */
+	public SolvePublisher(File directory, SolveExecutor executor, String configuration, Duration timeout)
+	{
+		this(new FilePublisher(directory), executor, configuration, timeout);
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super SolveResult> subscriber)
+	{
+		SolveSubscription subscription = new SolveSubscription(subscriber);
+		subscriber.onSubscribe(subscription);
+		source.subscribe(subscription);
+	}
+
+	//===============================================================================
+	// Subscription
+	//===============================================================================
+
+	/**
+	 * Subscriber to the source and subscription of the downstream subscriber. Every
+	 * downstream signal and every request to the source is made in drain(), by one thread
+	 * at a time.
+	 */
+	private class SolveSubscription implements Flow.Subscription, Flow.Subscriber<SudokuFile> {
+
+		private final Flow.Subscriber<? super SolveResult> downstream;
+		private volatile Flow.Subscription upstream;
+
+		private final AtomicLong requested = new AtomicLong();
+		private final AtomicLong received = new AtomicLong();
+		private final AtomicInteger active = new AtomicInteger();
+		private final Queue<SolveResult> ready = new ConcurrentLinkedQueue<SolveResult>();
+		private final Set<CompletableFuture<SolveResult>> solving = ConcurrentHashMap.newKeySet();
+		private final AtomicInteger wip = new AtomicInteger();
+
+		private volatile boolean sourceDone;
+		private volatile Throwable error;
+		private volatile boolean cancelled;
+
+		//only used in drain()
+		private long emitted;
+		private long upstreamRequested;
+		private boolean terminated;
+
+		SolveSubscription(Flow.Subscriber<? super SolveResult> downstream)
+		{
+			this.downstream = downstream;
+		}
+
+		//-------------------------------------------------------------------------------
+		// Downstream
+		//-------------------------------------------------------------------------------
+
+		@Override
+		public void request(long n)
+		{
+			if(n <= 0)
+			{
+				fail(new IllegalArgumentException("Requested " + n + " results"));
+				return;
+			}
+			requested.accumulateAndGet(n, (r, m) -> r + m < 0 ? Long.MAX_VALUE : r + m);
+			drain();
+		}
+
+		@Override
+		public void cancel()
+		{
+			cancelled = true;
+			stop();
+		}
+
+		//-------------------------------------------------------------------------------
+		// Upstream
+		//-------------------------------------------------------------------------------
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription)
+		{
+			if(upstream != null || cancelled)
+			{
+				subscription.cancel();
+				return;
+			}
+			upstream = subscription;
+			drain();
+		}
+
+		@Override
+		public void onNext(SudokuFile sf)
+		{
+			if(cancelled || error != null)
+			{
+				received.incrementAndGet();
+				return;
+			}
+			//counted as active first, so drain() never sees the puzzle as neither
+			active.incrementAndGet();
+			received.incrementAndGet();
+			CompletableFuture<SolveResult> result;
+			try
+			{
+				result = executor.submit(() -> sf, configuration, timeout);
+			}
+			catch(RuntimeException e)
+			{
+				//e.g. the executor was shut down: must not be thrown at the source
+				active.decrementAndGet();
+				fail(e);
+				return;
+			}
+			solving.add(result);
+			result.whenComplete((r, e) -> {
+				solving.remove(result);
+				if(e != null)
+				{
+					fail(e);
+				}
+				else
+				{
+					ready.add(r);
+				}
+				drain();
+			});
+		}
+
+		@Override
+		public void onError(Throwable throwable)
+		{
+			fail(throwable);
+		}
+
+		@Override
+		public void onComplete()
+		{
+			sourceDone = true;
+			drain();
+		}
+
+		//-------------------------------------------------------------------------------
+		// Helper Methods
+		//-------------------------------------------------------------------------------
+
+		private void fail(Throwable throwable)
+		{
+			if(error == null)
+			{
+				error = throwable;
+			}
+			stop();
+			drain();
+		}
+
+		/**
+		 * Cancels the source and interrupts the solves in flight.
+		 */
+		private void stop()
+		{
+			Flow.Subscription s = upstream;
+			if(s != null)
+			{
+				s.cancel();
+			}
+			for(CompletableFuture<SolveResult> result : solving)
+			{
+				result.cancel(true);
+			}
+		}
+
+		private void drain()
+		{
+			if(wip.getAndIncrement() != 0)
+			{
+				return;
+			}
+			int missed = 1;
+			do
+			{
+				if(terminated || cancelled)
+				{
+					ready.clear();
+				}
+				else if(error != null)
+				{
+					terminated = true;
+					ready.clear();
+					downstream.onError(error);
+				}
+				else
+				{
+					long demand = requested.get();
+					SolveResult result;
+					while(emitted < demand && (result = ready.poll()) != null)
+					{
+						emitted++;
+						active.decrementAndGet();
+						downstream.onNext(result);
+					}
+					if(sourceDone && active.get() == 0)
+					{
+						terminated = true;
+						downstream.onComplete();
+					}
+					else if(upstream != null && !sourceDone)
+					{
+						//puzzles held: received and not yet emitted, or requested and not yet received
+						long held = active.get() + upstreamRequested - received.get();
+						long want = Math.min(requested.get() - emitted, maxInFlight) - held;
+						if(want > 0)
+						{
+							upstreamRequested += want;
+							upstream.request(want);
+						}
+					}
+				}
+				missed = wip.addAndGet(-missed);
+			}
+			while(missed != 0);
+		}
+	}
+
+	//===============================================================================
+	// Directory Source
+	//===============================================================================
+
+	/**
+	 * Publishes the puzzles of a directory, reading each file when it is requested.
+	 */
+	private static class FilePublisher implements Flow.Publisher<SudokuFile> {
+
+		private final File directory;
+
+		FilePublisher(File directory)
+		{
+			this.directory = directory;
+		}
+
+		@Override
+		public void subscribe(Flow.Subscriber<? super SudokuFile> subscriber)
+		{
+			File[] files = directory.listFiles(File::isFile);
+			if(files == null)
+			{
+				subscriber.onSubscribe(new Flow.Subscription() {
+					public void request(long n) {}
+					public void cancel() {}
+				});
+				subscriber.onError(new IllegalArgumentException("Not a directory: " + directory));
+				return;
+			}
+			Arrays.sort(files);
+			subscriber.onSubscribe(new Flow.Subscription() {
+
+				private final AtomicLong requested = new AtomicLong();
+				private volatile boolean cancelled;
+				private int next;
+
+				@Override
+				public void request(long n)
+				{
+					if(n <= 0)
+					{
+						cancelled = true;
+						subscriber.onError(new IllegalArgumentException("Requested " + n + " puzzles"));
+						return;
+					}
+					//only the caller that finds no outstanding demand emits, so a request
+					//made from onNext does not recurse
+					if(requested.getAndAccumulate(n, (r, m) -> r + m < 0 ? Long.MAX_VALUE : r + m) != 0)
+					{
+						return;
+					}
+					long demand = n;
+					while(true)
+					{
+						long sent = 0;
+						while(sent < demand && next < files.length && !cancelled)
+						{
+							SudokuFile sf = SudokuBoardReader.readFile(files[next++].getPath());
+							if(sf.getN() != 0)
+							{
+								subscriber.onNext(sf);
+								sent++;
+							}
+						}
+						if(cancelled)
+						{
+							return;
+						}
+						if(next == files.length)
+						{
+							cancelled = true;
+							subscriber.onComplete();
+							return;
+						}
+						demand = requested.addAndGet(-sent);
+						if(demand == 0)
+						{
+							return;
+						}
+					}
+				}
+
+				@Override
+				public void cancel()
+				{
+					cancelled = true;
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package cspSolver;
+
+import sudoku.SudokuFile;
+
+/**
+ * Outcome and statistics of a single solver run.
+ */
+public class SolveResult {
+
+	//===============================================================================
+	// Properties
+	//===============================================================================
+
+	private SolveOutcome outcome;
+	private SudokuFile solution;
+	private long timeTakenNanos;
+	private long numAssignments;
+	private long numBacktracks;
+
+	//===============================================================================
+	// Constructors
+	//===============================================================================
+
+	public SolveResult(SolveOutcome outcome, SudokuFile solution, long timeTakenNanos, long numAssignments, long numBacktracks)
+	{
+		this.outcome = outcome;
+		this.solution = solution;
+		this.timeTakenNanos = timeTakenNanos;
+		this.numAssignments = numAssignments;
+		this.numBacktracks = numBacktracks;
+	}
+
+	//===============================================================================
+	// Accessors
+	//===============================================================================
+
+	public SolveOutcome getOutcome()
+	{
+		return outcome;
+	}
+
+	public boolean isSolved()
+	{
+		return outcome == SolveOutcome.SOLVED;
+	}
+
+	/**
+	 * @return the solution, null unless the outcome is SOLVED
+	 */
+	public SudokuFile getSolution()
+	{
+		return solution;
+	}
+
+	public long getTimeTakenNanos()
+	{
+		return timeTakenNanos;
+	}
+
+	/**
+	 * @return time taken in milliseconds
+	 */
+	public long getTimeTaken()
+	{
+		return timeTakenNanos / 1000000;
+	}
+
+	/**
+	 * @return number of search nodes, i.e. assignments for BTSolver and steps for LocalSolver
+	 */
+	public long getNumAssignments()
+	{
+		return numAssignments;
+	}
+
+	public long getNumBacktracks()
+	{
+		return numBacktracks;
+	}
+
+	//===============================================================================
+	// String representation
+	//===============================================================================
+
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append(outcome);
+		sb.append(": " + getTimeTaken() + " ms, " + numAssignments + " assignments, " + numBacktracks + " backtracks");
+		return sb.toString();
+	}
+}
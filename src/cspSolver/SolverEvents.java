@@ -0,0 +1,178 @@
+package cspSolver;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events emitted by the solvers. Events are only created once 
+ * Flight Recorder has been started, since the first event created boots its 
+ * infrastructure. Event fields are only filled in and committed while a recording has 
+ * the event enabled, so the events cost close to nothing otherwise. 
+ */
+final class SolverEvents {
+
+	private SolverEvents()
+	{}
+
+	/**
+	 * @return true once Flight Recorder has been started in this JVM. Events must not be 
+	 * created before then. 
+	 */
+	static boolean isRecording()
+	{
+		return FlightRecorder.isInitialized();
+	}
+
+	//===============================================================================
+	// Events
+	//===============================================================================
+
+	@Name("cspSolver.Solve")
+	@Label("Solve")
+	@Category({"Sudoku", "Solver"})
+	@Description("A complete run of a solver on one puzzle")
+	static class SolveEvent extends Event {
+		@Label("Puzzle") String puzzle;
+		@Label("N") int n;
+		@Label("Solver") String solver;
+		@Label("Configuration") String configuration;
+		@Label("Solved") boolean solved;
+		@Label("Assignments") long assignments;
+		@Label("Backtracks") long backtracks;
+	}
+
+	@Name("cspSolver.PropagationBatch")
+	@Label("Propagation Batch")
+	@Category({"Sudoku", "Solver"})
+	@Description("The consistency checks run after one decision")
+	@StackTrace(false)
+	static class PropagationBatchEvent extends Event {
+		@Label("Puzzle") String puzzle;
+		@Label("N") int n;
+		@Label("Configuration") String configuration;
+		@Label("Depth") int depth;
+		@Label("Constraints") int constraints;
+		@Label("Consistent") boolean consistent;
+	}
+
+	@Name("cspSolver.Restart")
+	@Label("Restart")
+	@Category({"Sudoku", "Solver"})
+	@Description("A local search restart from a new random state")
+	@StackTrace(false)
+	static class RestartEvent extends Event {
+		@Label("Puzzle") String puzzle;
+		@Label("N") int n;
+		@Label("Configuration") String configuration;
+		@Label("Restarts") int restarts;
+		@Label("Steps") long steps;
+	}
+
+	@Name("cspSolver.NodeRate")
+	@Label("Node Rate")
+	@Category({"Sudoku", "Solver"})
+	@Description("Search nodes per second of each running solver")
+	@Period("1 s")
+	@StackTrace(false)
+	static class NodeRateEvent extends Event {
+		@Label("Puzzle") String puzzle;
+		@Label("N") int n;
+		@Label("Solver") String solver;
+		@Label("Configuration") String configuration;
+		@Label("Nodes") long nodes;
+		@Label("Nodes Per Second") double nodesPerSecond;
+	}
+
+	//===============================================================================
+	// Node Rate Sampling
+	//===============================================================================
+
+	/**
+	 * A running solver whose node count is sampled by the periodic NodeRateEvent.
+	 */
+	static final class Sample {
+		private final String puzzle;
+		private final int n;
+		private final String solver;
+		private final String configuration;
+		private final LongSupplier nodes;
+		private long lastNodes;
+		private long lastTime = System.nanoTime();
+
+		Sample(String puzzle, int n, String solver, String configuration, LongSupplier nodes)
+		{
+			this.puzzle = puzzle;
+			this.n = n;
+			this.solver = solver;
+			this.configuration = configuration;
+			this.nodes = nodes;
+		}
+	}
+
+	private static final Set<Sample> RUNNING = ConcurrentHashMap.newKeySet();
+	private static EventType nodeRate;
+
+	private static synchronized EventType registerNodeRate()
+	{
+		if(nodeRate != null)
+		{
+			return nodeRate;
+		}
+		FlightRecorder.addPeriodicEvent(NodeRateEvent.class, new Runnable(){
+			@Override
+			public void run() {
+				for(Sample s : RUNNING)
+				{
+					long now = System.nanoTime();
+					long nodes = s.nodes.getAsLong();
+					NodeRateEvent e = new NodeRateEvent();
+					e.puzzle = s.puzzle;
+					e.n = s.n;
+					e.solver = s.solver;
+					e.configuration = s.configuration;
+					e.nodes = nodes;
+					e.nodesPerSecond = (nodes - s.lastNodes) * 1e9 / Math.max(1, now - s.lastTime);
+					e.commit();
+					s.lastNodes = nodes;
+					s.lastTime = now;
+				}
+			}
+		});
+		nodeRate = EventType.getEventType(NodeRateEvent.class);
+		return nodeRate;
+	}
+
+	/**
+	 * Registers a running solver for node rate sampling.
+	 * @return the registration to pass to {@link #stopSampling(Sample)}, null if node rate events are disabled
+	 */
+	static Sample startSampling(String puzzle, int n, String solver, String configuration, LongSupplier nodes)
+	{
+		if(!isRecording() || !registerNodeRate().isEnabled())
+		{
+			return null;
+		}
+		Sample s = new Sample(puzzle, n, solver, configuration, nodes);
+		RUNNING.add(s);
+		return s;
+	}
+
+	static void stopSampling(Sample s)
+	{
+		if(s != null)
+		{
+			RUNNING.remove(s);
+		}
+	}
+}
@@ -0,0 +1,292 @@
+package cspSolver;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import sudoku.PuzzleFeatures;
+import sudoku.SudokuFile;
+
+/**
+ * Picks the BTSolver configuration expected to be fastest for a puzzle.
+ *
+ * The model is a set of training puzzles, each with its PuzzleFeatures and the time
+ * every candidate configuration took on it. A puzzle gets the configuration with the
+ * smallest mean log time over its k nearest training puzzles, distances being taken
+ * on standardized features. Without training data the selector always answers
+ * DEFAULT_CONFIGURATION. Models are built by scripts.TrainSelector and stored as text.
+ * Once trained, a selector can be shared by threads.
+ */
+public class SolverSelector {
+
+	//===============================================================================
+	// Properties
+	//===============================================================================
+
+	public static final String DEFAULT_CONFIGURATION = "MinimumRemainingValue/None/Scheduled/None";
+
+	private static final int K = 5;
+
+	private final String[] configurations;
+	private final List<double[]> features = new ArrayList<double[]>();
+	private final List<double[]> logTimes = new ArrayList<double[]>();
+
+	//inverse standard deviation of each feature, recomputed after samples are added
+	private volatile double[] scale;
+
+	//===============================================================================
+	// Constructors
+	//===============================================================================
+
+	/**
+	 * @param configurations candidate configurations, as returned by BTSolver.getConfiguration()
+	 */
+	public SolverSelector(String... configurations)
+	{
+		this.configurations = configurations.clone();
+	}
+
+	/**
+	 * Reads a model written by save(File).
+	 */
+	public static SolverSelector load(File file) throws IOException
+	{
+		try(BufferedReader br = new BufferedReader(new FileReader(file)))
+		{
+			String line = br.readLine();
+			if(line == null || !line.startsWith("configurations,"))
+			{
+				throw new IOException("Not a solver selector model: " + file);
+			}
+			String[] header = line.split(",");
+			SolverSelector selector = new SolverSelector(Arrays.copyOfRange(header, 1, header.length));
+			int numFeatures = PuzzleFeatures.NAMES.length;
+			while((line = br.readLine()) != null)
+			{
+				if(!line.startsWith("sample,"))
+				{
+					continue;
+				}
+				String[] parts = line.split(",");
+				if(parts.length != 1 + numFeatures + selector.configurations.length)
+				{
+					throw new IOException("Sample with " + (parts.length - 1) + " values in " + file);
+				}
+				double[] f = new double[numFeatures];
+				long[] t = new long[selector.configurations.length];
+				for(int i = 0; i < f.length; i++)
+				{
+					f[i] = Double.parseDouble(parts[1 + i]);
+				}
+				for(int i = 0; i < t.length; i++)
+				{
+					t[i] = Long.parseLong(parts[1 + numFeatures + i]);
+				}
+				selector.addSample(f, t);
+			}
+			return selector;
+		}
+	}
+
+	//===============================================================================
+	// Training
+	//===============================================================================
+
+	/**
+	 * Adds a training puzzle.
+	 * @param features values of PuzzleFeatures.toArray()
+	 * @param timesNanos time of each configuration, in the order of getConfigurations(),
+	 *        with unsolved runs counted as a penalty time
+	 */
+	public void addSample(double[] features, long[] timesNanos)
+	{
+		if(timesNanos.length != configurations.length)
+		{
+			throw new IllegalArgumentException(timesNanos.length + " times for " + configurations.length + " configurations");
+		}
+		double[] logs = new double[timesNanos.length];
+		for(int i = 0; i < logs.length; i++)
+		{
+			logs[i] = Math.log(Math.max(1, timesNanos[i]));
+		}
+		this.features.add(features.clone());
+		this.logTimes.add(logs);
+		scale = null;
+	}
+
+	/**
+	 * Writes the model as text: a header with the configurations, one with the feature
+	 * names, then one line per training puzzle with its features and times.
+	 */
+	public void save(File file) throws IOException
+	{
+		try(PrintWriter out = new PrintWriter(new FileWriter(file)))
+		{
+			out.println("configurations," + String.join(",", configurations));
+			out.println("features," + String.join(",", PuzzleFeatures.NAMES));
+			for(int s = 0; s < features.size(); s++)
+			{
+				StringBuilder sb = new StringBuilder("sample");
+				for(double f : features.get(s))
+				{
+					sb.append(',').append(f);
+				}
+				for(double logTime : logTimes.get(s))
+				{
+					sb.append(',').append(Math.round(Math.exp(logTime)));
+				}
+				out.println(sb);
+			}
+		}
+	}
+
+	//===============================================================================
+	// Selection
+	//===============================================================================
+
+	public String[] getConfigurations()
+	{
+		return configurations.clone();
+	}
+
+	public int getNumSamples()
+	{
+		return features.size();
+	}
+
+	/**
+	 * @return the configuration expected to be fastest for the puzzle,
+	 *         DEFAULT_CONFIGURATION without computing features if there are no samples
+	 */
+	public String select(SudokuFile sf)
+	{
+		if(features.isEmpty())
+		{
+			return DEFAULT_CONFIGURATION;
+		}
+		return select(PuzzleFeatures.of(sf).toArray(), -1);
+	}
+
+	/**
+	 * @param exclude training sample to leave out, e.g. to evaluate the model on its own
+	 *        training puzzles, -1 for none
+	 * @return the configuration expected to be fastest for the features
+	 */
+	public String select(double[] f, int exclude)
+	{
+		int n = features.size() - (exclude >= 0 ? 1 : 0);
+		if(n <= 0)
+		{
+			return DEFAULT_CONFIGURATION;
+		}
+		double[] scale = standardize();
+
+		//k nearest samples by insertion into a small sorted array
+		int k = Math.min(K, n);
+		int[] nearest = new int[k];
+		double[] distances = new double[k];
+		Arrays.fill(distances, Double.POSITIVE_INFINITY);
+		for(int s = 0; s < features.size(); s++)
+		{
+			if(s == exclude)
+			{
+				continue;
+			}
+			double d = distance(f, features.get(s), scale);
+			int pos = k;
+			while(pos > 0 && distances[pos - 1] > d)
+			{
+				pos--;
+			}
+			if(pos == k)
+			{
+				continue;
+			}
+			System.arraycopy(distances, pos, distances, pos + 1, k - pos - 1);
+			System.arraycopy(nearest, pos, nearest, pos + 1, k - pos - 1);
+			distances[pos] = d;
+			nearest[pos] = s;
+		}
+
+		int best = 0;
+		double bestScore = Double.POSITIVE_INFINITY;
+		for(int c = 0; c < configurations.length; c++)
+		{
+			double score = 0;
+			for(int s : nearest)
+			{
+				score += logTimes.get(s)[c];
+			}
+			if(score < bestScore)
+			{
+				best = c;
+				bestScore = score;
+			}
+		}
+		return configurations[best];
+	}
+
+	/**
+	 * @return a solver for the puzzle, configured with select(sf)
+	 */
+	public BTSolver createSolver(SudokuFile sf)
+	{
+		BTSolver solver = new BTSolver(sf);
+		solver.setConfiguration(select(sf));
+		return solver;
+	}
+
+	//===============================================================================
+	// Helper Methods
+	//===============================================================================
+
+	private double[] standardize()
+	{
+		double[] scale = this.scale;
+		if(scale != null)
+		{
+			return scale;
+		}
+		int numFeatures = features.get(0).length;
+		double[] mean = new double[numFeatures];
+		scale = new double[numFeatures];
+		for(double[] f : features)
+		{
+			for(int i = 0; i < numFeatures; i++)
+			{
+				mean[i] += f[i] / features.size();
+			}
+		}
+		for(double[] f : features)
+		{
+			for(int i = 0; i < numFeatures; i++)
+			{
+				scale[i] += (f[i] - mean[i]) * (f[i] - mean[i]) / features.size();
+			}
+		}
+		for(int i = 0; i < numFeatures; i++)
+		{
+			//constant features do not count
+			scale[i] = scale[i] > 0 ? 1 / Math.sqrt(scale[i]) : 0;
+		}
+		this.scale = scale;
+		return scale;
+	}
+
+	private static double distance(double[] a, double[] b, double[] scale)
+	{
+		double sum = 0;
+		for(int i = 0; i < a.length; i++)
+		{
+			double d = (a[i] - b[i]) * scale[i];
+			sum += d * d;
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,57 @@
+package cspSolver;
+
+/**
+ * The propagators of the all-different constraints of a sudoku, cheapest first.
+ */
+public enum StandardPropagator implements Propagator {
+
+	NotEqual(LINEAR) {
+		@Override
+		public boolean propagate(Constraint c) {
+			return c.propagateAllDifferent();
+		}
+	},
+	HiddenSingles(LINEAR) {
+		@Override
+		public boolean propagate(Constraint c) {
+			return c.propagateHiddenSingles();
+		}
+	},
+	NakedPairs(QUADRATIC) {
+		@Override
+		public boolean propagate(Constraint c) {
+			return c.propagateNakedSubsets(2);
+		}
+	},
+	NakedTriples(CUBIC) {
+		@Override
+		public boolean propagate(Constraint c) {
+			return c.propagateNakedSubsets(3);
+		}
+	},
+	AllDifferentGAC(EXPENSIVE) {
+		@Override
+		public boolean propagate(Constraint c) {
+			return c.propagateGAC();
+		}
+	};
+
+	private final int costClass;
+
+	private StandardPropagator(int costClass)
+	{
+		this.costClass = costClass;
+	}
+
+	@Override
+	public String getName()
+	{
+		return name();
+	}
+
+	@Override
+	public int getCostClass()
+	{
+		return costClass;
+	}
+}
@@ -0,0 +1,315 @@
+package cspSolver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Killer sudoku cage: the variables take different values that add up to a sum.
+ *
+ * On top of the not-equal propagation of Constraint, every propagation also prunes
+ * the values that appear in no viable combination. The combinations of size distinct
+ * values from 1..N adding up to sum are computed once per (size, sum, N) and shared
+ * as bitmasks, so a propagation only tests masks instead of enumerating sums. Bounds
+ * reasoning on the smallest and largest values completes it, and is the only pruning
+ * for values beyond 63 or when a table would be too large.
+ */
+public class SumConstraint extends Constraint {
+
+	//===============================================================================
+	// Properties
+	//===============================================================================
+
+	private static final ConcurrentMap<Long, long[]> COMBINATIONS = new ConcurrentHashMap<Long, long[]>();
+	private static final long[] TOO_LARGE = new long[0];
+	private static final int MAX_COMBINATIONS = 1 << 16;
+
+	private final int sum;
+	//largest value of the puzzle, 0 until known
+	private int N;
+
+	//===============================================================================
+	// Constructors
+	//===============================================================================
+
+	public SumConstraint(int sum)
+	{
+		super();
+		this.sum = sum;
+	}
+
+	/**
+	 * Takes the largest value of the puzzle from the domains of the variables when 
+	 * first propagated. 
+	 */
+	public SumConstraint(int sum, List<Variable> vars)
+	{
+		super(vars);
+		this.sum = sum;
+	}
+
+	/**
+	 * @param N largest value of the puzzle
+	 */
+	public SumConstraint(int sum, int N, List<Variable> vars)
+	{
+		super(vars);
+		this.sum = sum;
+		this.N = N;
+	}
+
+	//===============================================================================
+	// Accessors
+	//===============================================================================
+
+	public int getSum()
+	{
+		return sum;
+	}
+
+	/**
+	 * Used for local search. A complete cage with the wrong sum counts as one conflict.
+	 */
+	@Override
+	public int getConflicts()
+	{
+		int numConflicts = super.getConflicts();
+		int total = 0;
+		for(Variable var : vars)
+		{
+			if(!var.isAssigned())
+			{
+				return numConflicts;
+			}
+			total += var.getAssignment();
+		}
+		return total == sum ? numConflicts : numConflicts + 1;
+	}
+
+	//===============================================================================
+	// Modifiers
+	//===============================================================================
+
+	@Override
+	public boolean propagateConstraint()
+	{
+		return super.propagateConstraint() && propagateSum();
+	}
+
+	@Override
+	public boolean propagateAllDifferent()
+	{
+		return super.propagateAllDifferent() && propagateSum();
+	}
+
+	@Override
+	public boolean propagateGAC()
+	{
+		return super.propagateGAC() && propagateSum();
+	}
+
+	/**
+	 * Removes the values that cannot be part of a sum over the cage.
+	 * @return false if the sum can no longer be reached, true otherwise
+	 */
+	public boolean propagateSum()
+	{
+		if(N == 0)
+		{
+			for(Variable var : vars)
+			{
+				N = Math.max(N, var.getDomain().getMaxValue());
+			}
+		}
+		//one table per (size, sum, N), whatever the domains have shrunk to
+		if(N < 64)
+		{
+			long[] table = getCombinations(vars.size(), sum, N);
+			if(table != TOO_LARGE && !propagateCombinations(table))
+			{
+				return false;
+			}
+		}
+		return propagateBounds();
+	}
+
+	/**
+	 * Keeps the values of the combinations that contain the assigned values, use only
+	 * values still available in the cage and meet every domain.
+	 */
+	private boolean propagateCombinations(long[] table)
+	{
+		long union = 0;
+		long assigned = 0;
+		for(Variable var : vars)
+		{
+			long d = var.getDomain().getWord(0);
+			union |= d;
+			if(var.size() == 1)
+			{
+				assigned |= d;
+			}
+		}
+
+		long support = 0;
+		nextCombination:
+		for(long combination : table)
+		{
+			if((combination & assigned) != assigned || (combination & ~union) != 0)
+			{
+				continue;
+			}
+			for(Variable var : vars)
+			{
+				if((var.getDomain().getWord(0) & combination) == 0)
+				{
+					continue nextCombination;
+				}
+			}
+			support |= combination;
+		}
+
+		long[] unsupported = { ~support };
+		for(Variable var : vars)
+		{
+			if((var.getDomain().getWord(0) & support) == 0)
+			{
+				return false;
+			}
+			var.removeValuesFromDomain(unsupported);
+		}
+		return true;
+	}
+
+	/**
+	 * Each variable must leave room for the others: its value is at least the sum minus
+	 * the largest values of the others and at most the sum minus their smallest values.
+	 */
+	private boolean propagateBounds()
+	{
+		long sumMin = 0;
+		long sumMax = 0;
+		int maxValue = 0;
+		for(Variable var : vars)
+		{
+			sumMin += var.getDomain().getMinValue();
+			sumMax += var.getDomain().getMaxValue();
+			maxValue = Math.max(maxValue, var.getDomain().getMaxValue());
+		}
+		if(sumMin > sum || sumMax < sum)
+		{
+			return false;
+		}
+
+		long[] outside = null;
+		for(Variable var : vars)
+		{
+			Domain d = var.getDomain();
+			int min = d.getMinValue();
+			int max = d.getMaxValue();
+			long lo = sum - (sumMax - max);
+			long hi = sum - (sumMin - min);
+			if(min >= lo && max <= hi)
+			{
+				continue;
+			}
+			if(outside == null)
+			{
+				outside = new long[(maxValue >>> 6) + 1];
+			}
+			else
+			{
+				Arrays.fill(outside, 0);
+			}
+			boolean keepsValue = false;
+			for(int value = d.nextValue(0); value != 0; value = d.nextValue(value + 1))
+			{
+				if(value < lo || value > hi)
+				{
+					outside[value >>> 6] |= 1L << value;
+				}
+				else
+				{
+					keepsValue = true;
+				}
+			}
+			if(!keepsValue)
+			{
+				return false;
+			}
+			var.removeValuesFromDomain(outside);
+		}
+		return true;
+	}
+
+	//===============================================================================
+	// Combination tables
+	//===============================================================================
+
+	/**
+	 * Returns the sets of size distinct values from 1..N that add up to sum, each as a
+	 * bitmask with bit v standing for value v. Tables are computed on first use and
+	 * shared by all cages.
+	 * @param N largest value, at most 63
+	 * @return combinations, TOO_LARGE if there are more than MAX_COMBINATIONS
+	 */
+	private static long[] getCombinations(int size, int sum, int N)
+	{
+		long key = ((long) size << 40) | ((long) sum << 8) | N;
+		long[] table = COMBINATIONS.get(key);
+		if(table == null)
+		{
+			List<Long> found = new ArrayList<Long>();
+			table = collect(found, 0L, 1, size, sum, N) ? toArray(found) : TOO_LARGE;
+			COMBINATIONS.putIfAbsent(key, table);
+		}
+		return table;
+	}
+
+	/**
+	 * Adds the combinations of remaining values from from..N adding up to rest.
+	 * @return false once the table grows beyond MAX_COMBINATIONS
+	 */
+	private static boolean collect(List<Long> found, long chosen, int from, int remaining, int rest, int N)
+	{
+		if(remaining == 0)
+		{
+			if(rest == 0)
+			{
+				found.add(chosen);
+			}
+			return found.size() <= MAX_COMBINATIONS;
+		}
+		for(int value = from; value <= N; value++)
+		{
+			//the smallest and largest sums the other values can still make
+			long low = (long) value * remaining + (long) remaining * (remaining - 1) / 2;
+			long high = (long) value + (long) (remaining - 1) * N - (long) (remaining - 1) * (remaining - 2) / 2;
+			if(low > rest)
+			{
+				break;
+			}
+			if(high < rest)
+			{
+				continue;
+			}
+			if(!collect(found, chosen | (1L << value), value + 1, remaining - 1, rest - value, N))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static long[] toArray(List<Long> values)
+	{
+		long[] array = new long[values.size()];
+		for(int i = 0; i < array.length; i++)
+		{
+			array[i] = values.get(i);
+		}
+		return array;
+	}
+}
@@ -0,0 +1,162 @@
+package cspSolver;
+
+import java.util.Arrays;
+
+/**
+ * Compiled, immutable structure of a constraint network: which variables each unit 
+ * (constraint) contains, which units each variable belongs to and the distinct peers 
+ * of each variable. Variables and units are identified by their index in the network. 
+ * 
+ * All relations are stored in compressed sparse row layout: the entries of row i are 
+ * {@code entries[start[i]] .. entries[start[i+1]-1]}. Solvers may read the arrays 
+ * directly but must not modify them. 
+ * 
+ * @see sudoku.Converter#compileTopology(int, int, int)
+ */
+public class Topology {
+
+	//===============================================================================
+	// Properties
+	//===============================================================================
+
+	private final int numVariables;
+	private final int[] unitStart;
+	private final int[] unitVars;
+	private final int[] varUnitStart;
+	private final int[] varUnits;
+	private final int[] peerStart;
+	private final int[] peers;
+
+	//===============================================================================
+	// Constructors
+	//===============================================================================
+
+	/**
+	 * Compiles the variable to unit and peer relations from the units.
+	 * @param numVariables number of variables
+	 * @param unitStart start of each unit in unitVars, with unitStart[numUnits] == unitVars.length
+	 * @param unitVars variables of all units, unit by unit
+	 */
+	public Topology(int numVariables, int[] unitStart, int[] unitVars)
+	{
+		this.numVariables = numVariables;
+		this.unitStart = unitStart;
+		this.unitVars = unitVars;
+		int numUnits = unitStart.length - 1;
+
+		//invert units into variable -> units with a counting pass
+		varUnitStart = new int[numVariables + 1];
+		for(int i = 0; i < unitVars.length; i++)
+		{
+			varUnitStart[unitVars[i] + 1]++;
+		}
+		for(int v = 0; v < numVariables; v++)
+		{
+			varUnitStart[v + 1] += varUnitStart[v];
+		}
+		varUnits = new int[unitVars.length];
+		int[] fill = new int[numVariables];
+		for(int u = 0; u < numUnits; u++)
+		{
+			for(int i = unitStart[u]; i < unitStart[u + 1]; i++)
+			{
+				int v = unitVars[i];
+				varUnits[varUnitStart[v] + fill[v]++] = u;
+			}
+		}
+
+		//peers are the distinct other variables of a variable's units
+		int[] stamp = new int[numVariables];
+		int[] buffer = new int[numVariables];
+		int[] peerList = new int[Math.max(16, unitVars.length)];
+		peerStart = new int[numVariables + 1];
+		int size = 0;
+		for(int v = 0; v < numVariables; v++)
+		{
+			stamp[v] = v + 1;
+			int count = 0;
+			for(int i = varUnitStart[v]; i < varUnitStart[v + 1]; i++)
+			{
+				int u = varUnits[i];
+				for(int j = unitStart[u]; j < unitStart[u + 1]; j++)
+				{
+					int w = unitVars[j];
+					if(stamp[w] != v + 1)
+					{
+						stamp[w] = v + 1;
+						buffer[count++] = w;
+					}
+				}
+			}
+			if(size + count > peerList.length)
+			{
+				peerList = Arrays.copyOf(peerList, Math.max(size + count, peerList.length * 2));
+			}
+			System.arraycopy(buffer, 0, peerList, size, count);
+			size += count;
+			peerStart[v + 1] = size;
+		}
+		peers = Arrays.copyOf(peerList, size);
+	}
+
+	//===============================================================================
+	// Accessors
+	//===============================================================================
+
+	public int getNumVariables()
+	{
+		return numVariables;
+	}
+
+	public int getNumUnits()
+	{
+		return unitStart.length - 1;
+	}
+
+	/**
+	 * @return start of each unit's variables in {@link #getUnitVars()}, length numUnits + 1
+	 */
+	public int[] getUnitStart()
+	{
+		return unitStart;
+	}
+
+	public int[] getUnitVars()
+	{
+		return unitVars;
+	}
+
+	/**
+	 * @return start of each variable's units in {@link #getVarUnits()}, length numVariables + 1
+	 */
+	public int[] getVarUnitStart()
+	{
+		return varUnitStart;
+	}
+
+	public int[] getVarUnits()
+	{
+		return varUnits;
+	}
+
+	/**
+	 * @return start of each variable's peers in {@link #getPeers()}, length numVariables + 1
+	 */
+	public int[] getPeerStart()
+	{
+		return peerStart;
+	}
+
+	public int[] getPeers()
+	{
+		return peers;
+	}
+
+	/**
+	 * @return number of distinct variables sharing a unit with variable v
+	 */
+	public int getNumPeers(int v)
+	{
+		return peerStart[v + 1] - peerStart[v];
+	}
+}
@@ -1,83 +1,134 @@
-package cspSolver;
-
-import java.util.EmptyStackException;
-import java.util.Stack;
-
-/**
- * Represents the trail of changes made. This allows backtracking to occur. 
- * Trail follows the singleton design pattern. 
- */
-public class Trail {
-	
-	//===============================================================================
-	// Properties
-	//===============================================================================
-	
-	private static Stack<Object[]> trail = new Stack<Object[]>();
-	private static final Trail TRAIL = new Trail();
-	private static Stack<Integer> breadcrumbs = new Stack<Integer>();
-	private Trail()
-	{}
-	
-	/**
-	 * returns the trail.
-	 * @return
-	 */
-	public static Trail getTrail()
-	{
-		return TRAIL;
-	}
-	
-	public static void clearTrail()
-	{
-		trail.clear();
-	}
-	//===============================================================================
-	// Accessors
-	//===============================================================================
-	
-	public int size()
-	{
-		return trail.size();
-	}
-	
-	//===============================================================================
-	// Modifiers
-	//===============================================================================
-	
-	/**
-	 * places a marker at the current point in the trail. Each time undo is called, the 
-	 * latest marker is popped and the trail 
-	 */
-	public void placeBreadCrumb()
-	{
-		breadcrumbs.add(trail.size());
-	}
-	/**
-	 * Adds a deep copy of a variable and its domain onto the trail.
-	 * @param v Variable to copy onto the trail
-	 */
-	public void push(Variable v)
-	{
-		Object[] vPair = { v, new Domain(v.getDomain())};
-		trail.push(vPair);
-	}
-	
-	/**
-	 * Pops changes pushed onto the trail until it reaches the latest marker. 
-	 * Also pops the latest marker. 
-	 * @param targetSize target position on the trail to backtrack to
-	 * @throws EmptyStackException if trail is empty
-	 */
-	public void undo() throws EmptyStackException 
-	{
-		int targetSize = breadcrumbs.pop();
-		for (int size = trail.size(); size > targetSize; size--)
-		{
-			Object[] vPair = trail.pop();
-			Variable v = (Variable) vPair[0];
-			v.setDomain((Domain) vPair[1]);
-		}
-	}
-}
-
+package cspSolver;
+
+import java.util.Arrays;
+import java.util.EmptyStackException;
+
+/**
+ * Represents the trail of changes made. This allows backtracking to occur. 
+ * Each BTSolver owns a trail and gives it to its constraint network, so the trail 
+ * follows the solver, not the thread running it: a solver reset and reused on 
+ * another thread keeps its grown stacks. Variables outside a network use the trail 
+ * of the current thread, returned by getTrail(). 
+ */
+public class Trail {
+	
+	//===============================================================================
+	// Properties
+	//===============================================================================
+	
+	private static final ThreadLocal<Trail> THREAD_TRAILS = new ThreadLocal<Trail>(){
+		@Override
+		protected Trail initialValue() {
+			return new Trail();
+		}
+	};
+	
+	//parallel arrays that grow by doubling
+	private Variable[] variables = new Variable[256];
+	private Domain[] domains = new Domain[256];
+	private int size;
+	private int[] breadCrumbs = new int[64];
+	private int numBreadCrumbs;
+	
+	public Trail()
+	{}
+	
+	/**
+	 * returns the trail of the current thread.
+	 * @return
+	 */
+	public static Trail getTrail()
+	{
+		return THREAD_TRAILS.get();
+	}
+	
+	/**
+	 * Clears the trail of the current thread. 
+	 */
+	public static void clearTrail()
+	{
+		getTrail().clear();
+	}
+	
+	//===============================================================================
+	// Accessors
+	//===============================================================================
+	
+	public int size()
+	{
+		return size;
+	}
+	
+	//===============================================================================
+	// Modifiers
+	//===============================================================================
+	
+	/**
+	 * Drops every change and marker without undoing them. The stacks keep their capacity. 
+	 */
+	public void clear()
+	{
+		Arrays.fill(variables, 0, size, null);
+		Arrays.fill(domains, 0, size, null);
+		size = 0;
+		numBreadCrumbs = 0;
+	}
+	
+	/**
+	 * places a marker at the current point in the trail. Each time undo is called, the 
+	 * latest marker is popped and the trail 
+	 */
+	public void placeBreadCrumb()
+	{
+		if(numBreadCrumbs == breadCrumbs.length)
+		{
+			breadCrumbs = Arrays.copyOf(breadCrumbs, 2 * breadCrumbs.length);
+		}
+		breadCrumbs[numBreadCrumbs++] = size;
+	}
+	/**
+	 * Adds a deep copy of a variable and its domain onto the trail.
+	 * @param v Variable to copy onto the trail
+	 */
+	public void push(Variable v)
+	{
+		if(size == variables.length)
+		{
+			variables = Arrays.copyOf(variables, 2 * size);
+			domains = Arrays.copyOf(domains, 2 * size);
+		}
+		variables[size] = v;
+		domains[size] = new Domain(v.getDomain());
+		size++;
+	}
+	
+	/**
+	 * Pops changes pushed onto the trail until it reaches the latest marker. 
+	 * Also pops the latest marker. 
+	 * @throws EmptyStackException if there is no marker
+	 */
+	public void undo() throws EmptyStackException 
+	{
+		if(numBreadCrumbs == 0)
+		{
+			throw new EmptyStackException();
+		}
+		undo(breadCrumbs[--numBreadCrumbs]);
+	}
+	
+	/**
+	 * Pops changes pushed onto the trail until it is back to a size returned by size(). 
+	 * Lets a caller keep its own markers instead of breadcrumbs. 
+	 * @param targetSize target position on the trail to backtrack to
+	 */
+	public void undo(int targetSize)
+	{
+		for(int i = size - 1; i >= targetSize; i--)
+		{
+			variables[i].setDomain(domains[i]);
+			variables[i] = null;
+			domains[i] = null;
+		}
+		size = Math.min(size, targetSize);
+	}
+}
@@ -1,227 +1,318 @@
-package cspSolver;
-
-import java.util.Iterator;
-import java.util.List;
-
-public class Variable implements Iterable<Integer> 
-{
-	//===============================================================================
-	// Properties
-	//===============================================================================
-	
-	private static int namingCounter = 1;
-	private Domain domain;	
-	private int row, col, block;
-	private boolean modified;
-	private boolean unchangeable;
-	private String name;
-	private static Trail trail = Trail.getTrail();
-	
-	private int oldSize;
-	
-	//===============================================================================
-	// Constructors
-	//===============================================================================
-	
-	public Variable(List<Integer> possible_Values, int row, int col, int block)
-	{	
-		this.domain = new Domain(possible_Values);
-		if (size() == 1)
-		{
-			modified = true;
-			unchangeable = true;
-		}
-		this.row = row;
-		this.col = col;
-		this.block = block;
-		this.name = "v" + namingCounter++;
-		this.oldSize = size();
-	}
-	
-	public Variable(Variable v)
-	{
-		this.domain = v.domain;
-		this.row = v.row;
-		this.col = v.col;
-		this.block = v.block;
-		this.modified = v.modified;
-		this.name = v.name;
-	}
-	
-	//===============================================================================
-	// Accessors
-	//===============================================================================
-	
-	/**
-	 * Used for local search. Used to differentiate between intialized assignments
-	 * and user assignments.
-	 * @return false if this variable was assigned at initialization.
-	 */
-	public boolean isChangeable()
-	{
-		return !unchangeable;
-	}
-	
-	public boolean isAssigned()
-	{
-		return size() == 1 ? true : false;
-	}
-	
-	public boolean isModified()
-	{
-		return modified;
-	}
-	
-	public void setModified(boolean modified)
-	{
-		this.modified = modified;
-		this.domain.setModified(modified);
-	}
-	
-	public int row()
-	{
-		return row;
-	}
-	
-	public int col()
-	{
-		return col;
-	}
-	
-	public int block()
-	{
-		return block;
-	}
-	
-	/**
-	 * Returns the value currently assigned to the IntVariable.
-	 * If the IntVariable is currently unassigned, returns 0
-	 * @return 0 if IntVariable is unassigned, Assignment otherwise
-	 */
-	public Integer getAssignment()
-	{
-		if (!this.isAssigned())
-		{
-			return 0;
-		}
-		else
-		{
-			return domain.getValues().get(0);
-		}
-	}
-	
-	public List<Integer> Values()
-	{
-		return domain.getValues();
-	}
-	
-	public int size()
-	{
-		return domain.size();
-	}
-	
-	public Domain getDomain()
-	{
-		return domain;
-	}
-	
-	public String getName()
-	{
-		return name;
-	}
-	
-	//===============================================================================
-	// Modifiers
-	//===============================================================================
-	
-	/** 
-	 * Used for local Search
-	 * @param val new assignment
-	 */
-	public void assignValue(int val)
-	{
-		setDomain(new Domain(val));
-	}
-	
-	/**
-	 * Used for Backtracking. Adds the changed domain to the Trail.
-	 * @param d new domain
-	 */
-	public void updateDomain(Domain d)
-	{
-		methodModifiesDomain();
-		
-		if(!domain.equals(d))
-		{
-			domain = d;
-			modified = true;
-		}
-	}
-	
-	/**
-	 * Performs a change to the domain without changing the Trail.
-	 * @param d new domain 
-	 */
-	public void setDomain(Domain d)
-	{
-		if(!domain.equals(d))
-		{
-			domain = d;
-			modified = true;
-		}
-	}
-	
-	/**
-	 * Removes a single value from the domain of V.
-	 * @param val value to remove
-	 */
-	public void removeValueFromDomain(int val) {
-		methodModifiesDomain();
-		domain.remove(val);
-		this.modified=domain.isModified();
-	}
-	
-	//===============================================================================
-	// Helper Methods
-	//===============================================================================
-	
-	public void methodModifiesDomain()
-	{
-		int newSize = size();
-		if (oldSize > newSize)
-		{
-			oldSize = newSize;
-		}
-			
-		trail.push(this);
-	}
-	
-	//===============================================================================
-	// Iterator
-	//===============================================================================
-	
-	@Override
-	public Iterator<Integer> iterator() {
-		return domain.iterator();
-	}
-	
-	//===============================================================================
-	// String Representation
-	//===============================================================================
-	public String toString()
-	{
-		//prints node stats
-		StringBuilder sb = new StringBuilder();
-		sb.append(" Name: "+name);
-		sb.append("\tdomain: {");
-		for(Integer i : domain)
-		{
-			sb.append(i + ",");	
-		}
-		sb.deleteCharAt(sb.length()-1);
-		sb.append("}");
-		return sb.toString();
-	}
-
-	
-}
+package cspSolver;
+
+import java.util.Iterator;
+import java.util.List;
+
+public class Variable implements Iterable<Integer> 
+{
+	//===============================================================================
+	// Properties
+	//===============================================================================
+	
+	private static int namingCounter = 1;
+	private Domain domain;	
+	private int row, col, block;
+	private boolean modified;
+	private boolean unchangeable;
+	private String name;
+	private int index = -1;
+	private ConstraintNetwork network;
+	
+	private int oldSize;
+	
+	//===============================================================================
+	// Constructors
+	//===============================================================================
+	
+	public Variable(List<Integer> possible_Values, int row, int col, int block)
+	{	
+		this(new Domain(possible_Values), row, col, block);
+	}
+	
+	/**
+	 * @param domain initial domain, owned by the variable from now on
+	 */
+	public Variable(Domain domain, int row, int col, int block)
+	{	
+		this.domain = domain;
+		if (size() == 1)
+		{
+			modified = true;
+			unchangeable = true;
+		}
+		this.row = row;
+		this.col = col;
+		this.block = block;
+		this.name = "v" + namingCounter++;
+		this.oldSize = size();
+	}
+	
+	public Variable(Variable v)
+	{
+		this.domain = v.domain;
+		this.row = v.row;
+		this.col = v.col;
+		this.block = v.block;
+		this.modified = v.modified;
+		this.name = v.name;
+		this.index = v.index;
+	}
+	
+	//===============================================================================
+	// Accessors
+	//===============================================================================
+	
+	/**
+	 * Used for local search. Used to differentiate between intialized assignments
+	 * and user assignments.
+	 * @return false if this variable was assigned at initialization.
+	 */
+	public boolean isChangeable()
+	{
+		return !unchangeable;
+	}
+	
+	public boolean isAssigned()
+	{
+		return size() == 1 ? true : false;
+	}
+	
+	public boolean isModified()
+	{
+		return modified;
+	}
+	
+	public void setModified(boolean modified)
+	{
+		if(modified)
+		{
+			markModified();
+		}
+		else
+		{
+			this.modified = false;
+		}
+		this.domain.setModified(modified);
+	}
+	
+	public int row()
+	{
+		return row;
+	}
+	
+	public int col()
+	{
+		return col;
+	}
+	
+	public int block()
+	{
+		return block;
+	}
+	
+	/**
+	 * Returns the value currently assigned to the IntVariable.
+	 * If the IntVariable is currently unassigned, returns 0
+	 * @return 0 if IntVariable is unassigned, Assignment otherwise
+	 */
+	public Integer getAssignment()
+	{
+		if (!this.isAssigned())
+		{
+			return 0;
+		}
+		else
+		{
+			return domain.getMinValue();
+		}
+	}
+	
+	public List<Integer> Values()
+	{
+		return domain.getValues();
+	}
+	
+	public int size()
+	{
+		return domain.size();
+	}
+	
+	public Domain getDomain()
+	{
+		return domain;
+	}
+	
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * @return position of the variable in its ConstraintNetwork, -1 if it has not been added to one
+	 * @see Topology
+	 */
+	public int getIndex()
+	{
+		return index;
+	}
+
+	void setIndex(int index)
+	{
+		this.index = index;
+	}
+
+	void setNetwork(ConstraintNetwork network)
+	{
+		this.network = network;
+	}
+	
+	//===============================================================================
+	// Modifiers
+	//===============================================================================
+	
+	/** 
+	 * Used for local Search
+	 * @param val new assignment
+	 */
+	public void assignValue(int val)
+	{
+		setDomain(new Domain(val));
+	}
+	
+	/**
+	 * Used for Backtracking. Adds the changed domain to the Trail.
+	 * @param d new domain
+	 */
+	public void updateDomain(Domain d)
+	{
+		methodModifiesDomain();
+		
+		if(!domain.equals(d))
+		{
+			domain = d;
+			markModified();
+		}
+	}
+	
+	/**
+	 * Performs a change to the domain without changing the Trail.
+	 * @param d new domain 
+	 */
+	public void setDomain(Domain d)
+	{
+		if(!domain.equals(d))
+		{
+			domain = d;
+			markModified();
+		}
+	}
+	
+	/**
+	 * Puts the variable back into its initial state for a new puzzle, as if it had 
+	 * just been constructed with domain d. 
+	 * @param d new initial domain
+	 */
+	void reset(Domain d)
+	{
+		domain = d;
+		unchangeable = d.size() == 1;
+		modified = false;
+		if(unchangeable)
+		{
+			markModified();
+		}
+		oldSize = d.size();
+	}
+	
+	/**
+	 * Removes a single value from the domain of V.
+	 * @param val value to remove
+	 */
+	public void removeValueFromDomain(int val) {
+		if(!domain.contains(val))
+		{
+			return;
+		}
+		methodModifiesDomain();
+		domain.remove(val);
+		markModified();
+	}
+	
+	/**
+	 * Removes a set of values from the domain of V, recording the domain on the 
+	 * trail once. 
+	 * @param mask values to remove, in the layout of Domain
+	 * @return true if any value was removed
+	 * @see Domain#removeAll(long[])
+	 */
+	public boolean removeValuesFromDomain(long[] mask) {
+		if(!domain.intersects(mask))
+		{
+			return false;
+		}
+		methodModifiesDomain();
+		domain.removeAll(mask);
+		markModified();
+		return true;
+	}
+	
+	//===============================================================================
+	// Helper Methods
+	//===============================================================================
+	
+	/**
+	 * Flags the variable as modified. The first time after the flag was cleared, 
+	 * the network is told so it can queue the constraints containing the variable. 
+	 */
+	private void markModified()
+	{
+		if(!modified)
+		{
+			modified = true;
+			if(network != null)
+			{
+				network.variableModified(this);
+			}
+		}
+	}
+	
+	public void methodModifiesDomain()
+	{
+		int newSize = size();
+		if (oldSize > newSize)
+		{
+			oldSize = newSize;
+		}
+			
+		(network != null ? network.getTrail() : Trail.getTrail()).push(this);
+	}
+	
+	//===============================================================================
+	// Iterator
+	//===============================================================================
+	
+	@Override
+	public Iterator<Integer> iterator() {
+		return domain.iterator();
+	}
+	
+	//===============================================================================
+	// String Representation
+	//===============================================================================
+	public String toString()
+	{
+		//prints node stats
+		StringBuilder sb = new StringBuilder();
+		sb.append(" Name: "+name);
+		sb.append("\tdomain: {");
+		for(Integer i : domain)
+		{
+			sb.append(i + ",");	
+		}
+		sb.deleteCharAt(sb.length()-1);
+		sb.append("}");
+		return sb.toString();
+	}
+
+	
+}
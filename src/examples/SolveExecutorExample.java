@@ -0,0 +1,45 @@
+package examples;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import cspSolver.SolveExecutor;
+import cspSolver.SolveOutcome;
+import cspSolver.SolveResult;
+import sudoku.SudokuBoardReader;
+
+public class SolveExecutorExample {
+
+	public static void main(String[] args)
+	{
+		int requests = 2000;
+		File[] files = new File("ExampleSudokuFiles/").listFiles((dir, name) -> name.startsWith("P"));
+		List<CompletableFuture<SolveResult>> results = new ArrayList<CompletableFuture<SolveResult>>();
+
+		long start = System.nanoTime();
+		try(SolveExecutor executor = new SolveExecutor(Runtime.getRuntime().availableProcessors()))
+		{
+			for(int i = 0; i < requests; i++)
+			{
+				File file = files[i % files.length];
+				//every request reads its puzzle from disk, the solvers only run the search
+				results.add(executor.submit(() -> SudokuBoardReader.readFile(file.getPath()), null, Duration.ofSeconds(60)));
+			}
+			System.out.println(executor.getInFlight() + " requests in flight, virtual threads: " + executor.usesVirtualThreads());
+		}
+
+		int[] outcomes = new int[SolveOutcome.values().length];
+		for(CompletableFuture<SolveResult> result : results)
+		{
+			outcomes[result.join().getOutcome().ordinal()]++;
+		}
+		for(SolveOutcome outcome : SolveOutcome.values())
+		{
+			System.out.println(outcome + ": " + outcomes[outcome.ordinal()]);
+		}
+		System.out.println("Total time: " + (System.nanoTime() - start) / 1000000 + " ms");
+	}
+}
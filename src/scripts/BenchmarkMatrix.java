@@ -0,0 +1,446 @@
+package scripts;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import sudoku.SudokuFile;
+import cspSolver.BTSolver;
+import cspSolver.SolveResult;
+import cspSolver.BTSolver.ConsistencyCheck;
+import cspSolver.BTSolver.NakedCheck;
+import cspSolver.BTSolver.ValueSelectionHeuristic;
+import cspSolver.BTSolver.VariableSelectionHeuristic;
+
+/**
+ * Benchmarks every combination of variable selection, value selection, consistency
+ * check and naked check over a folder of puzzles, without editing BTSolverStats.
+ *
+ * Each configuration first solves the corpus warmup times without measuring, so the
+ * JIT has compiled its code paths, then repeats times measuring each run. It reports
+ * the median, 90th and 99th percentile of time, assignments and backtracks per run.
+ * Every measured run is appended to a ResultsLog, which can serve as the baseline of
+ * a later benchmark: times are compared per configuration with a Mann-Whitney U test
+ * against the latest run of that configuration on the same corpus in the baseline,
+ * restricted to the puzzles present in both, and node counts, which do not depend on
+ * the machine, are compared directly.
+ *
+ * Usage: {@code java scripts.BenchmarkMatrix [folder] [-warmup n] [-repeats n]
+ * [-timeout seconds] [-limit puzzles] [-match regex] [-log file] [-baseline file]}
+ */
+public class BenchmarkMatrix {
+
+	//===============================================================================
+	// Properties
+	//===============================================================================
+
+	static final String LOG_FILE = "BTSolverBenchmark.csv";
+
+	//two sided significance level for time differences
+	static final double ALPHA = 0.01;
+
+	private int warmup = 1;
+	private int repeats = 5;
+	private Duration timeout = Duration.ofSeconds(10);
+	private int limit = Integer.MAX_VALUE;
+	private String match = ".*";
+	private File folder = new File("ExampleSudokuFiles/");
+	private File logFile = new File(LOG_FILE);
+	private File baselineFile = null;
+
+	//===============================================================================
+	// Main
+	//===============================================================================
+
+	public static void main(String[] args) throws IOException
+	{
+		BenchmarkMatrix matrix = new BenchmarkMatrix();
+		for(int i = 0; i < args.length; i++)
+		{
+			switch(args[i])
+			{
+			case "-warmup":		matrix.warmup = Integer.parseInt(args[++i]);
+			break;
+			case "-repeats":	matrix.repeats = Integer.parseInt(args[++i]);
+			break;
+			case "-timeout":	matrix.timeout = Duration.ofMillis((long) (Double.parseDouble(args[++i]) * 1000));
+			break;
+			case "-limit":		matrix.limit = Integer.parseInt(args[++i]);
+			break;
+			case "-match":		matrix.match = args[++i];
+			break;
+			case "-log":		matrix.logFile = new File(args[++i]);
+			break;
+			case "-baseline":	matrix.baselineFile = new File(args[++i]);
+			break;
+			default:			matrix.folder = new File(args[i]);
+			break;
+			}
+		}
+		int regressions = matrix.run();
+		if(regressions > 0)
+		{
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Runs the whole matrix.
+	 * @return number of configurations significantly slower than the baseline
+	 */
+	public int run() throws IOException
+	{
+		List<SudokuFile> puzzles = BTSolverStats.getPuzzlesFromFolder(folder);
+		Collections.sort(puzzles, new Comparator<SudokuFile>(){
+
+			@Override
+			public int compare(SudokuFile s1, SudokuFile s2) {
+				return String.valueOf(s1.getName()).compareTo(String.valueOf(s2.getName()));
+			}
+		});
+		puzzles = puzzles.subList(0, Math.min(limit, puzzles.size()));
+		Map<String, List<ResultsLog.Record>> baseline = baselineFile == null ? new HashMap<String, List<ResultsLog.Record>>() : loadBaseline(baselineFile, folder.getPath());
+
+		System.out.println(puzzles.size() + " puzzles from " + folder + ", " + warmup + " warm-up and " + repeats + " measured passes, timeout " + timeout.toMillis() + " ms");
+		System.out.println("configuration  solved  time ms (median/p90/p99)  assignments (median/p90/p99)  backtracks (median/p90/p99)  vs baseline");
+		List<String> regressions = new ArrayList<String>();
+		try(ResultsLog log = new ResultsLog(logFile, folder.getPath()))
+		{
+			for(String[] configuration : configurations())
+			{
+				String name = String.join("/", configuration);
+				if(!name.matches(match))
+				{
+					continue;
+				}
+				String line = benchmark(configuration, puzzles, log, baseline.get(name));
+				System.out.println(line);
+				if(line.contains("SLOWER"))
+				{
+					regressions.add(name);
+				}
+			}
+		}
+		System.out.println(regressions.size() + " significant regressions" + (regressions.isEmpty() ? "" : ": " + regressions));
+		System.out.println("Runs appended to " + logFile);
+		return regressions.size();
+	}
+
+	//===============================================================================
+	// Benchmark
+	//===============================================================================
+
+	/**
+	 * @return variable selection, value selection, consistency check and naked check
+	 *         names of every configuration
+	 */
+	static List<String[]> configurations()
+	{
+		List<String[]> configurations = new ArrayList<String[]>();
+		for(VariableSelectionHeuristic var : VariableSelectionHeuristic.values())
+		{
+			for(ValueSelectionHeuristic val : ValueSelectionHeuristic.values())
+			{
+				for(ConsistencyCheck cc : ConsistencyCheck.values())
+				{
+					for(NakedCheck naked : NakedCheck.values())
+					{
+						configurations.add(new String[] { var.name(), val.name(), cc.name(), naked.name() });
+					}
+				}
+			}
+		}
+		return configurations;
+	}
+
+	/**
+	 * Warms up and measures one configuration.
+	 * @param baseline runs of the configuration in the baseline, null if there are none
+	 * @return report line of the configuration
+	 */
+	private String benchmark(String[] configuration, List<SudokuFile> puzzles, ResultsLog log, List<ResultsLog.Record> baseline) throws IOException
+	{
+		BTSolver solver = null;
+		for(int pass = 0; pass < warmup; pass++)
+		{
+			for(SudokuFile sf : puzzles)
+			{
+				solver = solve(solver, configuration, sf);
+			}
+		}
+
+		int runs = repeats * puzzles.size();
+		long[] times = new long[runs];
+		long[] nodes = new long[runs];
+		long[] backtracks = new long[runs];
+		String[] names = new String[runs];
+		int solved = 0;
+		int run = 0;
+		for(int pass = 0; pass < repeats; pass++)
+		{
+			for(SudokuFile sf : puzzles)
+			{
+				solver = solve(solver, configuration, sf);
+				SolveResult result = solver.getResult();
+				log.record(solver.getConfiguration(), sf.getName(), sf.getN(), result);
+				times[run] = result.getTimeTakenNanos();
+				nodes[run] = result.getNumAssignments();
+				backtracks[run] = result.getNumBacktracks();
+				names[run] = sf.getName();
+				if(result.isSolved())
+				{
+					solved++;
+				}
+				run++;
+			}
+		}
+
+		StringBuilder sb = new StringBuilder(String.join("/", configuration));
+		sb.append("  ").append(solved).append("/").append(runs);
+		sb.append("  ").append(String.format("%.3f/%.3f/%.3f", percentile(times, 50) / 1e6, percentile(times, 90) / 1e6, percentile(times, 99) / 1e6));
+		sb.append("  ").append(percentile(nodes, 50)).append("/").append(percentile(nodes, 90)).append("/").append(percentile(nodes, 99));
+		sb.append("  ").append(percentile(backtracks, 50)).append("/").append(percentile(backtracks, 90)).append("/").append(percentile(backtracks, 99));
+		sb.append("  ").append(compare(times, nodes, names, baseline));
+		return sb.toString();
+	}
+
+	/**
+	 * Solves a puzzle, reusing the solver of the configuration once there is one.
+	 * @return the solver, holding the result
+	 */
+	private BTSolver solve(BTSolver solver, String[] configuration, SudokuFile sf)
+	{
+		if(solver == null)
+		{
+			solver = new BTSolver(sf);
+			solver.setConfiguration(String.join("/", configuration));
+		}
+		else
+		{
+			solver.reset(sf);
+		}
+		solver.solve(timeout);
+		return solver;
+	}
+
+	//===============================================================================
+	// Baseline comparison
+	//===============================================================================
+
+	/**
+	 * @param corpus corpus of the benchmark; runs on other corpora are ignored
+	 * @return the records of the latest run of each configuration on the corpus in a
+	 *         results log
+	 */
+	static Map<String, List<ResultsLog.Record>> loadBaseline(File file, String corpus) throws IOException
+	{
+		Map<String, String> latestRun = new HashMap<String, String>();
+		Map<String, Instant> latestStart = new HashMap<String, Instant>();
+		List<ResultsLog.Record> records = new ArrayList<ResultsLog.Record>();
+		for(ResultsLog.Record r : ResultsLog.read(file))
+		{
+			if(r.getCorpus().equals(corpus))
+			{
+				records.add(r);
+			}
+		}
+		for(ResultsLog.Record r : records)
+		{
+			//runs are named by their start time; compared as instants, since the text
+			//drops trailing zeros of the fraction
+			Instant start;
+			try
+			{
+				start = Instant.parse(r.getRun());
+			}
+			catch(DateTimeParseException e)
+			{
+				throw new IOException("Run " + r.getRun() + " is not a start time in " + file, e);
+			}
+			Instant latest = latestStart.get(r.getConfiguration());
+			if(latest == null || latest.isBefore(start))
+			{
+				latestStart.put(r.getConfiguration(), start);
+				latestRun.put(r.getConfiguration(), r.getRun());
+			}
+		}
+		Map<String, List<ResultsLog.Record>> baseline = new HashMap<String, List<ResultsLog.Record>>();
+		for(ResultsLog.Record r : records)
+		{
+			if(r.getRun().equals(latestRun.get(r.getConfiguration())))
+			{
+				baseline.computeIfAbsent(r.getConfiguration(), k -> new ArrayList<ResultsLog.Record>()).add(r);
+			}
+		}
+		return baseline;
+	}
+
+	/**
+	 * Compares the runs of the puzzles present in both the benchmark and the baseline.
+	 * @param puzzles puzzle of each run
+	 * @return "SLOWER" or "faster" with the change of the median time and the p-value if
+	 *         the time differs significantly, "same" otherwise, followed by the change of
+	 *         the median assignments if any, "-" if no puzzle is in both
+	 */
+	static String compare(long[] allTimes, long[] allNodes, String[] puzzles, List<ResultsLog.Record> baseline)
+	{
+		if(baseline == null)
+		{
+			return "-";
+		}
+		Set<String> current = new HashSet<String>(Arrays.asList(puzzles));
+		Set<String> common = new HashSet<String>();
+		List<ResultsLog.Record> base = new ArrayList<ResultsLog.Record>();
+		for(ResultsLog.Record r : baseline)
+		{
+			if(current.contains(r.getPuzzle()))
+			{
+				common.add(r.getPuzzle());
+				base.add(r);
+			}
+		}
+		if(base.isEmpty())
+		{
+			return "-";
+		}
+		long[] baseTimes = new long[base.size()];
+		long[] baseNodes = new long[base.size()];
+		for(int i = 0; i < base.size(); i++)
+		{
+			baseTimes[i] = base.get(i).getTimeNanos();
+			baseNodes[i] = base.get(i).getAssignments();
+		}
+		int n = 0;
+		long[] times = new long[allTimes.length];
+		long[] nodes = new long[allNodes.length];
+		for(int i = 0; i < puzzles.length; i++)
+		{
+			if(common.contains(puzzles[i]))
+			{
+				times[n] = allTimes[i];
+				nodes[n] = allNodes[i];
+				n++;
+			}
+		}
+		times = Arrays.copyOf(times, n);
+		nodes = Arrays.copyOf(nodes, n);
+		StringBuilder sb = new StringBuilder();
+		double p = mannWhitneyP(times, baseTimes);
+		long median = percentile(times, 50);
+		long baseMedian = percentile(baseTimes, 50);
+		if(p < ALPHA)
+		{
+			sb.append(median > baseMedian ? "SLOWER " : "faster ");
+			sb.append(String.format("%+.1f%% (p=%.2g)", 100.0 * (median - baseMedian) / Math.max(1, baseMedian), p));
+		}
+		else
+		{
+			sb.append("same");
+		}
+		long medianNodes = percentile(nodes, 50);
+		long baseMedianNodes = percentile(baseNodes, 50);
+		if(medianNodes != baseMedianNodes)
+		{
+			sb.append(String.format(", assignments %+d", medianNodes - baseMedianNodes));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Two sided Mann-Whitney U test with the normal approximation and tie correction.
+	 * @return probability of a difference at least this large if both samples come
+	 *         from the same distribution
+	 */
+	static double mannWhitneyP(long[] a, long[] b)
+	{
+		int n1 = a.length;
+		int n2 = b.length;
+		int n = n1 + n2;
+		long[][] all = new long[n][];
+		for(int i = 0; i < n1; i++)
+		{
+			all[i] = new long[] { a[i], 0 };
+		}
+		for(int i = 0; i < n2; i++)
+		{
+			all[n1 + i] = new long[] { b[i], 1 };
+		}
+		Arrays.sort(all, new Comparator<long[]>(){
+
+			@Override
+			public int compare(long[] x, long[] y) {
+				return Long.compare(x[0], y[0]);
+			}
+		});
+
+		double rankSumA = 0;
+		double ties = 0;
+		for(int i = 0; i < n; )
+		{
+			int j = i;
+			while(j < n && all[j][0] == all[i][0])
+			{
+				j++;
+			}
+			double rank = (i + 1 + j) / 2.0;
+			for(int k = i; k < j; k++)
+			{
+				if(all[k][1] == 0)
+				{
+					rankSumA += rank;
+				}
+			}
+			double t = j - i;
+			ties += t * t * t - t;
+			i = j;
+		}
+		double u = rankSumA - n1 * (n1 + 1) / 2.0;
+		double mean = n1 * (double) n2 / 2;
+		double variance = n1 * (double) n2 / 12 * ((n + 1) - ties / (n * (double) (n - 1)));
+		if(variance <= 0)
+		{
+			return 1;
+		}
+		double z = Math.abs(u - mean) / Math.sqrt(variance);
+		return Math.min(1, erfc(z / Math.sqrt(2)));
+	}
+
+	/**
+	 * Complementary error function, Numerical Recipes' Chebyshev approximation with a
+	 * relative error below 1.2e-7.
+	 */
+	private static double erfc(double x)
+	{
+		double t = 1 / (1 + 0.5 * Math.abs(x));
+		double y = t * Math.exp(-x * x - 1.26551223 + t * (1.00002368 + t * (0.37409196 + t * (0.09678418
+				+ t * (-0.18628806 + t * (0.27886807 + t * (-1.13520398 + t * (1.48851587
+				+ t * (-0.82215223 + t * 0.17087277)))))))));
+		return x >= 0 ? y : 2 - y;
+	}
+
+	/**
+	 * @return nearest rank percentile of the values
+	 */
+	static long percentile(long[] values, double percent)
+	{
+		if(values.length == 0)
+		{
+			return 0;
+		}
+		long[] sorted = values.clone();
+		Arrays.sort(sorted);
+		int rank = (int) Math.ceil(percent / 100 * sorted.length);
+		return sorted[Math.max(0, rank - 1)];
+	}
+}
@@ -0,0 +1,359 @@
+package scripts;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import cspSolver.SolveResult;
+
+/**
+ * Append-only CSV log of solver runs. Every record is written as soon as the run
+ * finishes, so an interrupted batch keeps everything it has done. Records are flushed
+ * to the operating system one by one and forced to the disk in batches, every
+ * syncEvery records or syncIntervalMillis, whichever comes first.
+ *
+ * Each record carries the metadata of its batch, so one file holds many runs that can
+ * be compared later: read(file) loads the records and summarize(records) reports every
+ * run and configuration. From the command line:
+ * {@code java scripts.ResultsLog BTSolverResults.csv}
+ */
+public class ResultsLog implements Closeable {
+
+	//===============================================================================
+	// Properties
+	//===============================================================================
+
+	public static final String HEADER = "run,configuration,corpus,puzzle,N,outcome,timeMs,assignments,backtracks,timeNanos";
+
+	private static final int DEFAULT_SYNC_EVERY = 32;
+	private static final long DEFAULT_SYNC_INTERVAL_MILLIS = 1000;
+
+	private final String run;
+	private final String corpus;
+	private final FileChannel channel;
+	private final Writer writer;
+	private final int syncEvery;
+	private final long syncIntervalMillis;
+	private int unsynced;
+	private long lastSync;
+
+	//===============================================================================
+	// Constructors
+	//===============================================================================
+
+	/**
+	 * Opens the log for appending, writing the header if the file is new. The run is
+	 * identified by its start time.
+	 * @param corpus where the puzzles come from, e.g. their folder
+	 */
+	public ResultsLog(File file, String corpus) throws IOException
+	{
+		this(file, corpus, DEFAULT_SYNC_EVERY, DEFAULT_SYNC_INTERVAL_MILLIS);
+	}
+
+	public ResultsLog(File file, String corpus, int syncEvery, long syncIntervalMillis) throws IOException
+	{
+		this.run = Instant.now().toString();
+		this.corpus = corpus;
+		this.syncEvery = syncEvery;
+		this.syncIntervalMillis = syncIntervalMillis;
+		boolean isNew = !file.exists() || file.length() == 0;
+		FileOutputStream out = new FileOutputStream(file, true);
+		this.channel = out.getChannel();
+		this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+		if(isNew)
+		{
+			writer.write(HEADER + "\n");
+			writer.flush();
+		}
+		lastSync = System.currentTimeMillis();
+	}
+
+	//===============================================================================
+	// Writing
+	//===============================================================================
+
+	/**
+	 * Appends one solver run.
+	 * @param configuration solver configuration, e.g. BTSolver.getConfiguration()
+	 */
+	public synchronized void record(String configuration, String puzzle, int N, SolveResult result) throws IOException
+	{
+		String[] fields = { run, configuration, corpus, puzzle, Integer.toString(N), result.getOutcome().toString(),
+				Long.toString(result.getTimeTaken()), Long.toString(result.getNumAssignments()), Long.toString(result.getNumBacktracks()),
+				Long.toString(result.getTimeTakenNanos()) };
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < fields.length; i++)
+		{
+			if(i > 0)
+			{
+				sb.append(',');
+			}
+			sb.append(quote(fields[i]));
+		}
+		writer.write(sb.append('\n').toString());
+		writer.flush();
+		unsynced++;
+		if(unsynced >= syncEvery || System.currentTimeMillis() - lastSync >= syncIntervalMillis)
+		{
+			sync();
+		}
+	}
+
+	/**
+	 * Forces the records written so far to the disk.
+	 */
+	public synchronized void sync() throws IOException
+	{
+		writer.flush();
+		channel.force(false);
+		unsynced = 0;
+		lastSync = System.currentTimeMillis();
+	}
+
+	public synchronized void close() throws IOException
+	{
+		sync();
+		writer.close();
+	}
+
+	public String getRun()
+	{
+		return run;
+	}
+
+	//===============================================================================
+	// Reading
+	//===============================================================================
+
+	/**
+	 * Reads all records of a log. A last line cut off by a crash is skipped.
+	 */
+	public static List<Record> read(File file) throws IOException
+	{
+		List<Record> records = new ArrayList<Record>();
+		try(BufferedReader br = new BufferedReader(new FileReader(file)))
+		{
+			String line;
+			while((line = br.readLine()) != null)
+			{
+				if(line.isEmpty() || line.startsWith("run,"))
+				{
+					continue;
+				}
+				List<String> fields = split(line);
+				if(fields.size() < 9)
+				{
+					continue;
+				}
+				try
+				{
+					records.add(new Record(fields));
+				}
+				catch(IllegalArgumentException e)
+				{
+					//torn or foreign line
+				}
+			}
+		}
+		return records;
+	}
+
+	/**
+	 * @return one line per run and configuration, in order of appearance: puzzles solved
+	 *         and the averages over the solved ones
+	 */
+	public static String summarize(List<Record> records)
+	{
+		Map<String, List<Record>> groups = new LinkedHashMap<String, List<Record>>();
+		for(Record r : records)
+		{
+			groups.computeIfAbsent(r.getRun() + " " + r.getConfiguration() + " " + r.getCorpus(), k -> new ArrayList<Record>()).add(r);
+		}
+		StringBuilder sb = new StringBuilder();
+		for(Map.Entry<String, List<Record>> group : groups.entrySet())
+		{
+			int solved = 0;
+			long time = 0;
+			long assignments = 0;
+			long backtracks = 0;
+			for(Record r : group.getValue())
+			{
+				if(r.isSolved())
+				{
+					solved++;
+					time += r.getTimeMs();
+					assignments += r.getAssignments();
+					backtracks += r.getBacktracks();
+				}
+			}
+			sb.append(group.getKey()).append(": solved ").append(solved).append("/").append(group.getValue().size());
+			if(solved > 0)
+			{
+				sb.append(", average ").append(time / solved).append(" ms, ")
+					.append(assignments / solved).append(" assignments, ")
+					.append(backtracks / solved).append(" backtracks");
+			}
+			sb.append("\n");
+		}
+		return sb.toString();
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+		File file = new File(args.length > 0 ? args[0] : BTSolverStats.RESULTS_FILE);
+		System.out.print(summarize(read(file)));
+	}
+
+	//===============================================================================
+	// Helper Methods
+	//===============================================================================
+
+	private static String quote(String field)
+	{
+		if(field == null)
+		{
+			return "";
+		}
+		if(field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0)
+		{
+			return field;
+		}
+		return "\"" + field.replace("\"", "\"\"") + "\"";
+	}
+
+	private static List<String> split(String line)
+	{
+		List<String> fields = new ArrayList<String>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		for(int i = 0; i < line.length(); i++)
+		{
+			char ch = line.charAt(i);
+			if(quoted)
+			{
+				if(ch == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"')
+				{
+					field.append('"');
+					i++;
+				}
+				else if(ch == '"')
+				{
+					quoted = false;
+				}
+				else
+				{
+					field.append(ch);
+				}
+			}
+			else if(ch == '"')
+			{
+				quoted = true;
+			}
+			else if(ch == ',')
+			{
+				fields.add(field.toString());
+				field.setLength(0);
+			}
+			else
+			{
+				field.append(ch);
+			}
+		}
+		fields.add(field.toString());
+		return fields;
+	}
+
+	//===============================================================================
+	// Records
+	//===============================================================================
+
+	/**
+	 * One line of the log.
+	 */
+	public static class Record {
+
+		private final String run;
+		private final String configuration;
+		private final String corpus;
+		private final String puzzle;
+		private final int N;
+		private final String outcome;
+		private final long timeMs;
+		private final long assignments;
+		private final long backtracks;
+		private final long timeNanos;
+
+		private Record(List<String> fields)
+		{
+			run = fields.get(0);
+			configuration = fields.get(1);
+			corpus = fields.get(2);
+			puzzle = fields.get(3);
+			N = Integer.parseInt(fields.get(4));
+			outcome = fields.get(5);
+			timeMs = Long.parseLong(fields.get(6));
+			assignments = Long.parseLong(fields.get(7));
+			backtracks = Long.parseLong(fields.get(8));
+			//logs written before timeNanos was added only have milliseconds
+			timeNanos = fields.size() > 9 ? Long.parseLong(fields.get(9)) : timeMs * 1000000;
+		}
+
+		public String getRun() {
+			return run;
+		}
+
+		public String getConfiguration() {
+			return configuration;
+		}
+
+		public String getCorpus() {
+			return corpus;
+		}
+
+		public String getPuzzle() {
+			return puzzle;
+		}
+
+		public int getN() {
+			return N;
+		}
+
+		public String getOutcome() {
+			return outcome;
+		}
+
+		public boolean isSolved() {
+			return outcome.equals("SOLVED");
+		}
+
+		public long getTimeMs() {
+			return timeMs;
+		}
+
+		public long getTimeNanos() {
+			return timeNanos;
+		}
+
+		public long getAssignments() {
+			return assignments;
+		}
+
+		public long getBacktracks() {
+			return backtracks;
+		}
+	}
+}
@@ -0,0 +1,264 @@
+package scripts;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import sudoku.Cage;
+import sudoku.SudokuBoardReader;
+import sudoku.SudokuFile;
+import cspSolver.BTSolver;
+import cspSolver.SolveResult;
+import cspSolver.SolverSelector;
+
+/**
+ * Solves the puzzles of standard input in parallel and writes them to standard output
+ * in input order, so it can sit in a shell pipeline:
+ * {@code cat puzzles.txt | java scripts.SolvePipeline > solutions.txt}
+ *
+ * Puzzles are read with SudokuBoardReader.read and written with SudokuFile.toString,
+ * which that reader accepts again, separated by blank lines. A puzzle that is not solved
+ * is written unchanged and its outcome reported on standard error. The futures of the
+ * puzzles read but not yet written wait in a queue of window entries; the reader blocks
+ * when it is full, so memory stays flat on endless input however slow one puzzle is.
+ *
+ * Usage: {@code java scripts.SolvePipeline [-workers n] [-window n] [-timeout seconds]
+ * [-configuration c | -model file]}
+ */
+public class SolvePipeline {
+
+	//===============================================================================
+	// Properties
+	//===============================================================================
+
+	//marks the end of the input in the queue
+	private static final CompletableFuture<String> END = CompletableFuture.completedFuture(null);
+
+	private final ExecutorService pool;
+	private final BlockingQueue<CompletableFuture<String>> pending;
+	private final ThreadLocal<BTSolver> solvers = new ThreadLocal<BTSolver>();
+	private final Duration timeout;
+	private final String configuration;
+	private final SolverSelector selector;
+
+	//===============================================================================
+	// Constructors
+	//===============================================================================
+
+	/**
+	 * @param configuration solver configuration, null to use the selector
+	 * @param selector picks the configuration of each puzzle, null for the default
+	 */
+	public SolvePipeline(int workers, int window, Duration timeout, String configuration, SolverSelector selector)
+	{
+		this.pool = Executors.newFixedThreadPool(workers);
+		this.pending = new ArrayBlockingQueue<CompletableFuture<String>>(window);
+		this.timeout = timeout;
+		this.configuration = configuration;
+		this.selector = selector == null ? new SolverSelector() : selector;
+	}
+
+	//===============================================================================
+	// Pipeline
+	//===============================================================================
+
+	/**
+	 * Solves every puzzle of in and writes them to out in the same order. Reading and
+	 * solving go on while the writer waits for the oldest puzzle.
+	 * @return number of puzzles written
+	 * @throws IOException if the input is malformed or a stream fails; the puzzles read
+	 *         before are still written
+	 */
+	public long run(BufferedReader in, Writer out) throws IOException, InterruptedException
+	{
+		long[] written = new long[1];
+		IOException[] writeError = new IOException[1];
+		Thread writer = new Thread(() -> {
+			try
+			{
+				written[0] = write(out);
+			}
+			catch(IOException e)
+			{
+				writeError[0] = e;
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}, "SolvePipeline writer");
+		writer.start();
+
+		IOException readError = null;
+		try
+		{
+			long index = 0;
+			SudokuFile sf;
+			while((sf = SudokuBoardReader.read(in)) != null)
+			{
+				SudokuFile puzzle = sf;
+				long number = ++index;
+				if(!enqueue(CompletableFuture.supplyAsync(() -> solve(puzzle, number), pool), writer))
+				{
+					break;
+				}
+			}
+		}
+		catch(IOException e)
+		{
+			readError = e;
+		}
+		finally
+		{
+			enqueue(END, writer);
+			writer.join();
+			pool.shutdownNow();
+		}
+		if(writeError[0] != null)
+		{
+			throw writeError[0];
+		}
+		if(readError != null)
+		{
+			throw readError;
+		}
+		return written[0];
+	}
+
+	/**
+	 * Waits for room in the queue.
+	 * @return false if the writer stopped, e.g. because the output was closed
+	 */
+	private boolean enqueue(CompletableFuture<String> result, Thread writer) throws InterruptedException
+	{
+		while(!pending.offer(result, 100, TimeUnit.MILLISECONDS))
+		{
+			if(!writer.isAlive())
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the results in queue order, flushing whenever the next one is not ready.
+	 */
+	private long write(Writer out) throws IOException, InterruptedException
+	{
+		long count = 0;
+		while(true)
+		{
+			CompletableFuture<String> next = pending.take();
+			if(next == END)
+			{
+				out.flush();
+				return count;
+			}
+			if(!next.isDone())
+			{
+				out.flush();
+			}
+			try
+			{
+				out.write(next.get());
+			}
+			catch(ExecutionException e)
+			{
+				throw new IOException("Solver failed", e.getCause());
+			}
+			count++;
+		}
+	}
+
+	/**
+	 * Runs on a worker thread.
+	 * @return the text to write for the puzzle
+	 */
+	private String solve(SudokuFile sf, long number)
+	{
+		BTSolver solver = solvers.get();
+		if(solver == null)
+		{
+			solver = new BTSolver(sf);
+			solvers.set(solver);
+		}
+		else
+		{
+			solver.reset(sf);
+		}
+		solver.setConfiguration(configuration != null ? configuration : selector.select(sf));
+		SolveResult result = solver.solve(timeout);
+		if(!result.isSolved())
+		{
+			System.err.println("puzzle " + number + ": " + result.getOutcome());
+			return sf + "\n";
+		}
+		SudokuFile solution = result.getSolution();
+		for(Cage cage : sf.getCages())
+		{
+			solution.addCage(cage);
+		}
+		return solution + "\n";
+	}
+
+	//===============================================================================
+	// Main
+	//===============================================================================
+
+	public static void main(String[] args) throws IOException, InterruptedException
+	{
+		int workers = Runtime.getRuntime().availableProcessors();
+		int window = 0;
+		Duration timeout = Duration.ofSeconds(60);
+		String configuration = null;
+		SolverSelector selector = null;
+		for(int i = 0; i < args.length; i++)
+		{
+			switch(args[i])
+			{
+			case "-workers":		workers = Integer.parseInt(args[++i]);
+			break;
+			case "-window":			window = Integer.parseInt(args[++i]);
+			break;
+			case "-timeout":		timeout = Duration.ofMillis((long) (Double.parseDouble(args[++i]) * 1000));
+			break;
+			case "-configuration":	configuration = args[++i];
+			break;
+			case "-model":			selector = SolverSelector.load(new File(args[++i]));
+			break;
+			default:				System.err.println("Unknown option " + args[i]);
+			System.exit(2);
+			}
+		}
+		SolvePipeline pipeline = new SolvePipeline(workers, window > 0 ? window : 4 * workers, timeout, configuration, selector);
+		BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+		//not System.out: a PrintStream swallows the IOException of a closed pipe, so the
+		//pipeline would go on reading and solving for nobody
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8));
+		try
+		{
+			pipeline.run(in, out);
+		}
+		catch(IOException e)
+		{
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,493 @@
+package scripts;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import sudoku.BoardTooLargeException;
+import sudoku.SudokuBoardReader;
+import sudoku.SudokuFile;
+import cspSolver.BTSolver;
+import cspSolver.SolutionCache;
+import cspSolver.SolveResult;
+import cspSolver.SolverSelector;
+
+/**
+ * Local HTTP solve service, bound to the loopback interface.
+ *
+ * POST /solve takes one or more puzzles in the SudokuBoardReader format as the body
+ * (optional query parameters: timeoutMs, positive and capped at MAX_TIMEOUT_MILLIS, and
+ * configuration) and answers, per puzzle, a
+ * line "outcome time_ms assignments backtracks" followed by the solution if there is
+ * one and a blank line. The puzzles of a request are solved in parallel on a fixed pool
+ * of workers, each reusing its BTSolver. At most workers + queue puzzles are admitted
+ * at a time; a request that does not fit is rejected as a whole with 503 and a
+ * Retry-After estimated from the work in flight. A request with more puzzles than
+ * that, a body larger than MAX_PUZZLE_BYTES per admissible puzzle, or a board larger
+ * than MAX_N or than the body could hold, can never fit and is rejected with 413, as
+ * soon as the limit is known to be exceeded and before the board is allocated.
+ * GET /stats reports counters, throughput and latency percentiles of the recent
+ * puzzles.
+ *
+ * Usage: {@code java scripts.SolveServer [-port n] [-workers n] [-queue n]
+ * [-model file] [-cache entries]}
+ */
+public class SolveServer {
+
+	//===============================================================================
+	// Properties
+	//===============================================================================
+
+	private static final int LATENCY_WINDOW = 1024;
+	private static final long DEFAULT_TIMEOUT_MILLIS = 10000;
+	private static final long MAX_TIMEOUT_MILLIS = 600000;
+
+	/** Largest puzzle text accepted, enough for a 36x36 board with cages. */
+	public static final int MAX_PUZZLE_BYTES = 16 * 1024;
+
+	/** Largest board size accepted. */
+	public static final int MAX_N = 64;
+
+	//seconds a client may take to send a request, unless set on the command line
+	private static final String MAX_REQUEST_SECONDS = "30";
+
+	private final int workers;
+	private final int capacity;
+	private final long maxBodyBytes;
+	private final int maxN;
+	private final HttpServer server;
+	private final ExecutorService pool;
+	private final ExecutorService handlers;
+	private final Semaphore admission;
+	private final ThreadLocal<BTSolver> solvers = new ThreadLocal<BTSolver>();
+	private final SolverSelector selector;
+	private final SolutionCache cache;
+
+	private final long startTime = System.nanoTime();
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong solved = new AtomicLong();
+	private final AtomicLong busyNanos = new AtomicLong();
+	private final long[] latencies = new long[LATENCY_WINDOW];
+	private long numLatencies;
+
+	//===============================================================================
+	// Constructors
+	//===============================================================================
+
+	/**
+	 * @param port port on the loopback interface, 0 for any free port
+	 * @param workers number of solver threads
+	 * @param queue number of puzzles that may wait for a worker
+	 * @param selector picks the configuration of puzzles that do not name one, null for the default
+	 * @param cache results cache, null for none
+	 */
+	public SolveServer(int port, int workers, int queue, SolverSelector selector, SolutionCache cache) throws IOException
+	{
+		this.workers = workers;
+		this.capacity = workers + queue;
+		this.maxBodyBytes = (long) capacity * MAX_PUZZLE_BYTES;
+		//a board takes at least two bytes, a digit and a space, per cell
+		this.maxN = (int) Math.min(MAX_N, (long) Math.sqrt(maxBodyBytes / 2.0));
+		this.selector = selector == null ? new SolverSelector() : selector;
+		this.cache = cache;
+		this.admission = new Semaphore(capacity);
+		this.pool = Executors.newFixedThreadPool(workers);
+		this.handlers = Executors.newFixedThreadPool(2);
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext("/solve", this::handleSolve);
+		server.createContext("/stats", this::handleStats);
+		server.setExecutor(handlers);
+	}
+
+	public void start()
+	{
+		server.start();
+	}
+
+	/**
+	 * Stops accepting requests, lets the admitted puzzles finish for up to delay seconds.
+	 */
+	public void stop(int delay) throws InterruptedException
+	{
+		server.stop(delay);
+		pool.shutdown();
+		pool.awaitTermination(delay, TimeUnit.SECONDS);
+		pool.shutdownNow();
+		handlers.shutdownNow();
+	}
+
+	public int getPort()
+	{
+		return server.getAddress().getPort();
+	}
+
+	//===============================================================================
+	// Requests
+	//===============================================================================
+
+	private void handleSolve(HttpExchange exchange) throws IOException
+	{
+		requests.incrementAndGet();
+		if(!exchange.getRequestMethod().equals("POST"))
+		{
+			respond(exchange, 405, "POST puzzles to /solve\n");
+			return;
+		}
+		long timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+		String configuration = null;
+		List<SudokuFile> puzzles = new ArrayList<SudokuFile>();
+		try
+		{
+			for(String[] param : queryParameters(exchange.getRequestURI()))
+			{
+				if(param[0].equals("timeoutMs"))
+				{
+					timeoutMillis = Long.parseLong(param[1]);
+					if(timeoutMillis <= 0)
+					{
+						throw new IllegalArgumentException("timeoutMs must be positive");
+					}
+					timeoutMillis = Math.min(timeoutMillis, MAX_TIMEOUT_MILLIS);
+				}
+				else if(param[0].equals("configuration"))
+				{
+					configuration = param[1];
+					if(!isConfiguration(configuration))
+					{
+						throw new IllegalArgumentException("unknown configuration " + configuration);
+					}
+				}
+			}
+			String length = exchange.getRequestHeaders().getFirst("Content-Length");
+			if(length != null && Long.parseLong(length.trim()) > maxBodyBytes)
+			{
+				throw new BodyTooLargeException();
+			}
+			BufferedReader br = new BufferedReader(new InputStreamReader(new LimitedInputStream(exchange.getRequestBody(), maxBodyBytes), StandardCharsets.UTF_8));
+			SudokuFile sf;
+			while((sf = SudokuBoardReader.read(br, maxN)) != null)
+			{
+				puzzles.add(sf);
+				if(puzzles.size() > capacity)
+				{
+					throw new BodyTooLargeException();
+				}
+			}
+		}
+		catch(BodyTooLargeException | BoardTooLargeException e)
+		{
+			rejected.incrementAndGet();
+			respond(exchange, 413, "Too large: at most " + capacity + " puzzles of size " + maxN + " and " + maxBodyBytes + " bytes per request\n");
+			return;
+		}
+		catch(IOException | RuntimeException e)
+		{
+			respond(exchange, 400, "Bad request: " + e.getMessage() + "\n");
+			return;
+		}
+		catch(Error e)
+		{
+			//answered so the client does not wait for a response that never comes
+			respond(exchange, 500, "Internal error\n");
+			throw e;
+		}
+		if(puzzles.isEmpty())
+		{
+			respond(exchange, 400, "No puzzle in the request\n");
+			return;
+		}
+		if(!admission.tryAcquire(puzzles.size()))
+		{
+			rejected.incrementAndGet();
+			exchange.getResponseHeaders().set("Retry-After", Long.toString(retryAfterSeconds(puzzles.size())));
+			respond(exchange, 503, "Overloaded, retry later\n");
+			return;
+		}
+
+		//the response is written by the worker finishing the last puzzle
+		long received = System.nanoTime();
+		Duration timeout = Duration.ofMillis(timeoutMillis);
+		List<CompletableFuture<SolveResult>> results = new ArrayList<CompletableFuture<SolveResult>>();
+		for(SudokuFile puzzle : puzzles)
+		{
+			String fixed = configuration;
+			results.add(CompletableFuture.supplyAsync(() -> solve(puzzle, fixed, timeout, received), pool));
+		}
+		CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).whenComplete((done, error) -> {
+			StringBuilder sb = new StringBuilder();
+			for(CompletableFuture<SolveResult> result : results)
+			{
+				SolveResult r = result.isCompletedExceptionally() ? null : result.join();
+				if(r == null)
+				{
+					sb.append("ERROR\n\n");
+					continue;
+				}
+				sb.append(r.getOutcome()).append(' ').append(r.getTimeTaken()).append(' ')
+					.append(r.getNumAssignments()).append(' ').append(r.getNumBacktracks()).append('\n');
+				if(r.isSolved())
+				{
+					sb.append(r.getSolution());
+				}
+				sb.append('\n');
+			}
+			try
+			{
+				respond(exchange, 200, sb.toString());
+			}
+			catch(IOException e)
+			{
+				//client went away
+			}
+		});
+	}
+
+	/**
+	 * Runs on a worker thread.
+	 */
+	private SolveResult solve(SudokuFile sf, String configuration, Duration timeout, long received)
+	{
+		long start = System.nanoTime();
+		try
+		{
+			String config = configuration != null ? configuration : selector.select(sf);
+			if(cache != null)
+			{
+				return cache.solve(sf, puzzle -> solveNow(puzzle, config, timeout));
+			}
+			return solveNow(sf, config, timeout);
+		}
+		finally
+		{
+			long end = System.nanoTime();
+			busyNanos.addAndGet(end - start);
+			solved.incrementAndGet();
+			recordLatency(end - received);
+			admission.release();
+		}
+	}
+
+	private SolveResult solveNow(SudokuFile sf, String configuration, Duration timeout)
+	{
+		BTSolver solver = solvers.get();
+		if(solver == null)
+		{
+			solver = new BTSolver(sf);
+			solvers.set(solver);
+		}
+		else
+		{
+			solver.reset(sf);
+		}
+		solver.setConfiguration(configuration);
+		return solver.solve(timeout);
+	}
+
+	private void handleStats(HttpExchange exchange) throws IOException
+	{
+		respond(exchange, 200, getStats());
+	}
+
+	//===============================================================================
+	// Statistics
+	//===============================================================================
+
+	/**
+	 * @return counters, throughput since start and latency percentiles, from receiving a
+	 *         request to finishing a puzzle, over the last puzzles
+	 */
+	public String getStats()
+	{
+		long[] window;
+		synchronized(latencies)
+		{
+			window = Arrays.copyOf(latencies, (int) Math.min(numLatencies, LATENCY_WINDOW));
+		}
+		Arrays.sort(window);
+		double seconds = (System.nanoTime() - startTime) / 1e9;
+		StringBuilder sb = new StringBuilder();
+		sb.append("requests ").append(requests.get()).append('\n');
+		sb.append("rejected ").append(rejected.get()).append('\n');
+		sb.append("puzzles ").append(solved.get()).append('\n');
+		sb.append("in_flight ").append(capacity - admission.availablePermits()).append('\n');
+		sb.append("workers ").append(workers).append('\n');
+		sb.append(String.format("throughput_per_s %.1f%n", solved.get() / seconds));
+		for(int percent : new int[] { 50, 90, 99 })
+		{
+			long latency = window.length == 0 ? 0 : window[Math.max(0, (int) Math.ceil(percent / 100.0 * window.length) - 1)];
+			sb.append(String.format("latency_p%d_ms %.3f%n", percent, latency / 1e6));
+		}
+		if(cache != null)
+		{
+			sb.append("cache_hits ").append(cache.getHits()).append('\n');
+			sb.append("cache_misses ").append(cache.getMisses()).append('\n');
+		}
+		return sb.toString();
+	}
+
+	private void recordLatency(long nanos)
+	{
+		synchronized(latencies)
+		{
+			latencies[(int) (numLatencies++ % LATENCY_WINDOW)] = nanos;
+		}
+	}
+
+	/**
+	 * @return seconds until the work in flight and the request should be done, at the
+	 *         average service time so far
+	 */
+	private long retryAfterSeconds(int puzzles)
+	{
+		long done = Math.max(1, solved.get());
+		double average = busyNanos.get() / (double) done;
+		int inFlight = capacity - admission.availablePermits();
+		return Math.max(1, (long) Math.ceil((inFlight + puzzles) * average / workers / 1e9));
+	}
+
+	//===============================================================================
+	// Helper Methods
+	//===============================================================================
+
+	private static List<String[]> queryParameters(URI uri)
+	{
+		List<String[]> params = new ArrayList<String[]>();
+		String query = uri.getQuery();
+		if(query != null)
+		{
+			for(String pair : query.split("&"))
+			{
+				int eq = pair.indexOf('=');
+				params.add(eq < 0 ? new String[] { pair, "" } : new String[] { pair.substring(0, eq), URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8) });
+			}
+		}
+		return params;
+	}
+
+	private static boolean isConfiguration(String configuration)
+	{
+		for(String[] c : BenchmarkMatrix.configurations())
+		{
+			if(String.join("/", c).equals(configuration))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Request body that fails once more than a limit has been read.
+	 */
+	private static class LimitedInputStream extends FilterInputStream {
+
+		private long remaining;
+
+		LimitedInputStream(InputStream in, long limit)
+		{
+			super(in);
+			this.remaining = limit;
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			int b = super.read();
+			if(b >= 0 && --remaining < 0)
+			{
+				throw new BodyTooLargeException();
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException
+		{
+			int n = super.read(b, off, (int) Math.min(len, remaining + 1));
+			if(n > 0 && (remaining -= n) < 0)
+			{
+				throw new BodyTooLargeException();
+			}
+			return n;
+		}
+	}
+
+	private static class BodyTooLargeException extends IOException {
+
+		private static final long serialVersionUID = 1L;
+	}
+
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException
+	{
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try(OutputStream out = exchange.getResponseBody())
+		{
+			out.write(bytes);
+		}
+	}
+
+	//===============================================================================
+	// Main
+	//===============================================================================
+
+	public static void main(String[] args) throws IOException
+	{
+		int port = 8080;
+		int workers = Runtime.getRuntime().availableProcessors();
+		int queue = 64 * workers;
+		SolverSelector selector = null;
+		SolutionCache cache = null;
+		for(int i = 0; i < args.length; i++)
+		{
+			switch(args[i])
+			{
+			case "-port":		port = Integer.parseInt(args[++i]);
+			break;
+			case "-workers":	workers = Integer.parseInt(args[++i]);
+			break;
+			case "-queue":		queue = Integer.parseInt(args[++i]);
+			break;
+			case "-model":		selector = SolverSelector.load(new File(args[++i]));
+			break;
+			case "-cache":		cache = new SolutionCache(Integer.parseInt(args[++i]));
+			break;
+			default:			System.err.println("Unknown option " + args[i]);
+			return;
+			}
+		}
+		//bounds how long a slow upload can hold one of the two handler threads; read
+		//by the JDK server when it starts
+		if(System.getProperty("sun.net.httpserver.maxReqTime") == null)
+		{
+			System.setProperty("sun.net.httpserver.maxReqTime", MAX_REQUEST_SECONDS);
+		}
+		SolveServer server = new SolveServer(port, workers, queue, selector, cache);
+		server.start();
+		System.out.println("Solving on http://localhost:" + server.getPort() + "/solve with " + workers + " workers, " + queue + " queued puzzles at most");
+	}
+}
@@ -0,0 +1,142 @@
+package scripts;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import sudoku.PuzzleFeatures;
+import sudoku.SudokuFile;
+import cspSolver.BTSolver;
+import cspSolver.SolveResult;
+import cspSolver.SolverSelector;
+
+/**
+ * Trains a SolverSelector offline: times every candidate configuration on every puzzle
+ * of a folder, in the same corpus format as BTSolverStats and BenchmarkMatrix, and saves
+ * the model. Runs that do not solve the puzzle count as twice the timeout.
+ *
+ * It then evaluates the model leaving each puzzle out in turn, comparing the total time
+ * of the selected configurations with DEFAULT_CONFIGURATION and with the best
+ * configuration of every puzzle.
+ *
+ * Usage: {@code java scripts.TrainSelector [folder] [-model file] [-match regex]
+ * [-repeats n] [-timeout seconds]}
+ */
+public class TrainSelector {
+
+	static final String MODEL_FILE = "SolverSelector.model";
+
+	//complete, propagating configurations; the others are rarely competitive
+	static final String DEFAULT_MATCH = "(MinimumRemainingValue|Degree)/.*/(ForwardChecking|AllDifferent|GeneralizedArcConsistency|Scheduled)/.*";
+
+	public static void main(String[] args) throws IOException
+	{
+		File folder = new File("ExampleSudokuFiles/");
+		File model = new File(MODEL_FILE);
+		String match = DEFAULT_MATCH;
+		int repeats = 3;
+		Duration timeout = Duration.ofSeconds(5);
+		for(int i = 0; i < args.length; i++)
+		{
+			switch(args[i])
+			{
+			case "-model":		model = new File(args[++i]);
+			break;
+			case "-match":		match = args[++i];
+			break;
+			case "-repeats":	repeats = Integer.parseInt(args[++i]);
+			break;
+			case "-timeout":	timeout = Duration.ofMillis((long) (Double.parseDouble(args[++i]) * 1000));
+			break;
+			default:			folder = new File(args[i]);
+			break;
+			}
+		}
+
+		List<String> configurations = new ArrayList<String>();
+		for(String[] configuration : BenchmarkMatrix.configurations())
+		{
+			String name = String.join("/", configuration);
+			if(name.matches(match))
+			{
+				configurations.add(name);
+			}
+		}
+		if(!configurations.contains(SolverSelector.DEFAULT_CONFIGURATION))
+		{
+			configurations.add(SolverSelector.DEFAULT_CONFIGURATION);
+		}
+		List<SudokuFile> puzzles = BTSolverStats.getPuzzlesFromFolder(folder);
+		Collections.sort(puzzles, new Comparator<SudokuFile>(){
+
+			@Override
+			public int compare(SudokuFile s1, SudokuFile s2) {
+				return String.valueOf(s1.getName()).compareTo(String.valueOf(s2.getName()));
+			}
+		});
+		System.out.println("Timing " + configurations.size() + " configurations on " + puzzles.size() + " puzzles");
+
+		SolverSelector selector = new SolverSelector(configurations.toArray(new String[0]));
+		List<double[]> samples = new ArrayList<double[]>();
+		List<long[]> times = new ArrayList<long[]>();
+		for(SudokuFile sf : puzzles)
+		{
+			long[] t = new long[configurations.size()];
+			for(int c = 0; c < t.length; c++)
+			{
+				t[c] = medianTime(sf, configurations.get(c), repeats, timeout);
+			}
+			double[] f = PuzzleFeatures.of(sf).toArray();
+			selector.addSample(f, t);
+			samples.add(f);
+			times.add(t);
+			System.out.println(sf.getName() + ": " + PuzzleFeatures.of(sf));
+		}
+		selector.save(model);
+		System.out.println("Model saved to " + model);
+
+		//leave-one-out evaluation
+		int defaultIndex = configurations.indexOf(SolverSelector.DEFAULT_CONFIGURATION);
+		long selected = 0;
+		long fixed = 0;
+		long oracle = 0;
+		for(int s = 0; s < samples.size(); s++)
+		{
+			long[] t = times.get(s);
+			selected += t[configurations.indexOf(selector.select(samples.get(s), s))];
+			fixed += t[defaultIndex];
+			oracle += Arrays.stream(t).min().getAsLong();
+		}
+		System.out.printf("Total time, leave-one-out: selected %.1f ms, default %.1f ms, best per puzzle %.1f ms%n",
+				selected / 1e6, fixed / 1e6, oracle / 1e6);
+	}
+
+	/**
+	 * @return median time of the configuration over repeats runs after one warm-up run,
+	 *         twice the timeout if a run does not solve the puzzle
+	 */
+	static long medianTime(SudokuFile sf, String configuration, int repeats, Duration timeout)
+	{
+		long[] t = new long[repeats];
+		for(int r = -1; r < repeats; r++)
+		{
+			BTSolver solver = new BTSolver(sf);
+			solver.setConfiguration(configuration);
+			SolveResult result = solver.solve(timeout);
+			if(!result.isSolved())
+			{
+				return 2 * timeout.toNanos();
+			}
+			if(r >= 0)
+			{
+				t[r] = result.getTimeTakenNanos();
+			}
+		}
+		return BenchmarkMatrix.percentile(t, 50);
+	}
+}
@@ -0,0 +1,17 @@
+package sudoku;
+
+import java.io.IOException;
+
+/**
+ * Thrown when reading a puzzle whose board is larger than the reader accepts, before 
+ * the board is allocated. 
+ */
+public class BoardTooLargeException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	public BoardTooLargeException (String message)
+	{
+		super(message);
+	}
+}
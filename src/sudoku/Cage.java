@@ -0,0 +1,66 @@
+package sudoku;
+
+/**
+ * A cage of a killer sudoku: the values of its cells are all different and add up to 
+ * its sum. Cells are given by their 0-based row and column. 
+ */
+public class Cage {
+
+	private final int sum;
+	private final int[] rows;
+	private final int[] cols;
+
+	/**
+	 * @param sum required sum of the cell values
+	 * @param rows row of each cell
+	 * @param cols column of each cell, same length as rows
+	 */
+	public Cage(int sum, int[] rows, int[] cols)
+	{
+		if(rows.length != cols.length)
+		{
+			throw new IllegalArgumentException("rows and cols differ in length");
+		}
+		this.sum = sum;
+		this.rows = rows.clone();
+		this.cols = cols.clone();
+	}
+
+	public int getSum()
+	{
+		return sum;
+	}
+
+	/**
+	 * @return number of cells in the cage
+	 */
+	public int size()
+	{
+		return rows.length;
+	}
+
+	public int getRow(int cell)
+	{
+		return rows[cell];
+	}
+
+	public int getCol(int cell)
+	{
+		return cols[cell];
+	}
+
+	/**
+	 * @return the cage in the input file format, e.g. "cage 10 0,0 0,1 1,0"
+	 * @see SudokuBoardReader
+	 */
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder("cage ");
+		sb.append(sum);
+		for(int i = 0; i < rows.length; i++)
+		{
+			sb.append(' ').append(rows[i]).append(',').append(cols[i]);
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,609 @@
+package sudoku;
+
+import java.util.Arrays;
+
+/**
+ * Canonical form of a puzzle under the symmetries of sudoku: permuting bands, stacks,
+ * the rows within a band and the columns within a stack, transposing when p == q, and
+ * relabelling the values. Isomorphic puzzles have the same canonical board and hash, so
+ * a solution found for the canonical board serves all of them through toOriginal.
+ *
+ * The canonical board is the smallest board of the symmetry class, read column by
+ * column, with values relabelled 1, 2, ... in order of first appearance, among the
+ * boards whose bands, stacks, rows and columns are sorted by invariants of their givens
+ * (see Search#computeKeys). Restricting to sorted boards keeps the form canonical, as the
+ * restriction only depends on the board, and cuts most of the ties caused by relabelling.
+ * It is found by a depth first search over the first column, the row order and the
+ * remaining columns, pruning every branch whose prefix is already larger than the best
+ * board so far. Very symmetric puzzles, e.g. nearly empty ones, still have many equal
+ * prefixes; the search gives up after a node budget and canonicalize returns null.
+ */
+public class CanonicalForm {
+
+	//===============================================================================
+	// Properties
+	//===============================================================================
+
+	private static final long DEFAULT_MAX_NODES = 5000000;
+
+	private final int N, p, q;
+	private final SudokuFile canonical;
+	private final boolean transposed;
+	private final int[] rowOrder;
+	private final int[] colOrder;
+	private final int[] labelOf;
+	private final int[] valueOf;
+	private final long hashHigh;
+	private final long hashLow;
+
+	//===============================================================================
+	// Constructors
+	//===============================================================================
+
+	private CanonicalForm(Search search)
+	{
+		this.N = search.N;
+		this.p = search.p;
+		this.q = search.q;
+		this.transposed = search.bestTransposed;
+		this.rowOrder = search.bestRows;
+		this.colOrder = search.bestCols;
+
+		//values absent from the puzzle get the remaining labels in increasing order
+		labelOf = search.bestLabels;
+		valueOf = new int[N + 1];
+		int next = search.bestNumLabels + 1;
+		for(int value = 1; value <= N; value++)
+		{
+			if(labelOf[value] == 0)
+			{
+				labelOf[value] = next++;
+			}
+			valueOf[labelOf[value]] = value;
+		}
+
+		int[][] board = new int[N][N];
+		for(int i = 0; i < N; i++)
+		{
+			for(int j = 0; j < N; j++)
+			{
+				board[i][j] = search.best[j * N + i];
+			}
+		}
+		canonical = new SudokuFile(N, p, q, board);
+
+		long[] hash = canonical.hash128();
+		hashHigh = hash[0];
+		hashLow = hash[1];
+	}
+
+	/**
+	 * Computes the canonical form of a puzzle.
+	 * @return the canonical form, null if the search ran out of its node budget
+	 * @throws IllegalArgumentException for killer sudokus, whose cages are not mapped
+	 */
+	public static CanonicalForm canonicalize(SudokuFile sf)
+	{
+		return canonicalize(sf, DEFAULT_MAX_NODES);
+	}
+
+	/**
+	 * @param maxNodes maximum number of search nodes
+	 * @see #canonicalize(SudokuFile)
+	 */
+	public static CanonicalForm canonicalize(SudokuFile sf, long maxNodes)
+	{
+		if(!sf.getCages().isEmpty())
+		{
+			throw new IllegalArgumentException("Killer sudokus can not be canonicalized");
+		}
+		Search search = new Search(sf, maxNodes);
+		return search.run() ? new CanonicalForm(search) : null;
+	}
+
+	//===============================================================================
+	// Accessors
+	//===============================================================================
+
+	/**
+	 * @return the canonical board, the same for every isomorphic puzzle
+	 */
+	public SudokuFile getBoard()
+	{
+		return canonical;
+	}
+
+	/**
+	 * @return high 64 bits of the 128 bit hash of the canonical board
+	 */
+	public long getHashHigh()
+	{
+		return hashHigh;
+	}
+
+	/**
+	 * @return low 64 bits of the 128 bit hash of the canonical board
+	 */
+	public long getHashLow()
+	{
+		return hashLow;
+	}
+
+	/**
+	 * @return the 128 bit hash as 32 hexadecimal digits
+	 */
+	public String getHash()
+	{
+		return String.format("%016x%016x", hashHigh, hashLow);
+	}
+
+	//===============================================================================
+	// Transformations
+	//===============================================================================
+
+	/**
+	 * Maps a board in canonical orientation and labels, e.g. the solution of the
+	 * canonical board, back to the orientation and values of the original puzzle.
+	 */
+	public SudokuFile toOriginal(SudokuFile canonicalBoard)
+	{
+		int[][] from = canonicalBoard.getBoard();
+		int[][] to = new int[N][N];
+		for(int i = 0; i < N; i++)
+		{
+			for(int j = 0; j < N; j++)
+			{
+				int r = rowOrder[i];
+				int c = colOrder[j];
+				int label = from[i][j];
+				to[transposed ? c : r][transposed ? r : c] = label == 0 ? 0 : valueOf[label];
+			}
+		}
+		return new SudokuFile(N, p, q, to);
+	}
+
+	/**
+	 * Maps a board in the orientation and values of the original puzzle, e.g. the
+	 * puzzle itself, to canonical orientation and labels.
+	 */
+	public SudokuFile toCanonical(SudokuFile originalBoard)
+	{
+		int[][] from = originalBoard.getBoard();
+		int[][] to = new int[N][N];
+		for(int i = 0; i < N; i++)
+		{
+			for(int j = 0; j < N; j++)
+			{
+				int r = rowOrder[i];
+				int c = colOrder[j];
+				int value = transposed ? from[c][r] : from[r][c];
+				to[i][j] = value == 0 ? 0 : labelOf[value];
+			}
+		}
+		return new SudokuFile(N, p, q, to);
+	}
+
+	//===============================================================================
+	// Search
+	//===============================================================================
+
+	/**
+	 * Depth first search for the smallest board of the symmetry class. Positions are
+	 * numbered column by column, so position j*N+i is row slot i of column slot j.
+	 */
+	private static class Search {
+
+		final int N, p, q;
+		final int[][] board;
+		final long maxNodes;
+		long nodes;
+		boolean transposed;
+
+		//current branch
+		final int[] cur;
+		final int[] rows;
+		final int[] cols;
+		final boolean[] usedRow;
+		final boolean[] usedCol;
+		final int[] bandOfSlot;
+		final int[] stackOfSlot;
+		final boolean[] usedBand;
+		final boolean[] usedStack;
+		final int[] labels;
+		int numLabels;
+
+		//sort keys, invariant under the symmetries, of the current orientation
+		final long[] rowKey;
+		final long[] colKey;
+		final long[] bandKey;
+		final long[] stackKey;
+
+		//best board so far
+		int[] best;
+		int[] bestRows;
+		int[] bestCols;
+		int[] bestLabels;
+		int bestNumLabels;
+		boolean bestTransposed;
+		int bestVersion;
+
+		Search(SudokuFile sf, long maxNodes)
+		{
+			N = sf.getN();
+			p = sf.getP();
+			q = sf.getQ();
+			board = sf.getBoard();
+			this.maxNodes = maxNodes;
+			cur = new int[N * N];
+			rows = new int[N];
+			cols = new int[N];
+			usedRow = new boolean[N];
+			usedCol = new boolean[N];
+			bandOfSlot = new int[q];
+			stackOfSlot = new int[p];
+			usedBand = new boolean[q];
+			usedStack = new boolean[p];
+			labels = new int[N + 1];
+			rowKey = new long[N];
+			colKey = new long[N];
+			bandKey = new long[q];
+			stackKey = new long[p];
+		}
+
+		/**
+		 * Keys of a line combine its number of givens, the givens of the crossing lines
+		 * at its givens and how its givens spread over the blocks. None of these change
+		 * when lines are permuted or values relabelled, so sorting by them is part of
+		 * the canonical form.
+		 */
+		void computeKeys()
+		{
+			int[] rowCount = new int[N];
+			int[] colCount = new int[N];
+			for(int r = 0; r < N; r++)
+			{
+				for(int c = 0; c < N; c++)
+				{
+					if(value(r, c) != 0)
+					{
+						rowCount[r]++;
+						colCount[c]++;
+					}
+				}
+			}
+			Arrays.fill(rowKey, 0);
+			Arrays.fill(colKey, 0);
+			Arrays.fill(bandKey, 0);
+			Arrays.fill(stackKey, 0);
+			int[] perStack = new int[p];
+			int[] perBand = new int[q];
+			for(int r = 0; r < N; r++)
+			{
+				Arrays.fill(perStack, 0);
+				long crossing = 0;
+				for(int c = 0; c < N; c++)
+				{
+					if(value(r, c) != 0)
+					{
+						crossing += (long) colCount[c] * colCount[c];
+						perStack[c / q]++;
+					}
+				}
+				long spread = 0;
+				for(int count : perStack)
+				{
+					spread += (long) count * count;
+				}
+				rowKey[r] = (rowCount[r] * 1000003L + crossing) * 1000003L + spread;
+				bandKey[r / p] += rowKey[r] * rowKey[r] + rowKey[r];
+			}
+			for(int c = 0; c < N; c++)
+			{
+				Arrays.fill(perBand, 0);
+				long crossing = 0;
+				for(int r = 0; r < N; r++)
+				{
+					if(value(r, c) != 0)
+					{
+						crossing += (long) rowCount[r] * rowCount[r];
+						perBand[r / p]++;
+					}
+				}
+				long spread = 0;
+				for(int count : perBand)
+				{
+					spread += (long) count * count;
+				}
+				colKey[c] = (colCount[c] * 1000003L + crossing) * 1000003L + spread;
+				stackKey[c / q] += colKey[c] * colKey[c] + colKey[c];
+			}
+		}
+
+		/**
+		 * @return false if the node budget ran out
+		 */
+		boolean run()
+		{
+			for(int t = 0; t < (p == q ? 2 : 1); t++)
+			{
+				transposed = t == 1;
+				computeKeys();
+				long minStack = Long.MAX_VALUE;
+				for(int stack = 0; stack < p; stack++)
+				{
+					minStack = Math.min(minStack, stackKey[stack]);
+				}
+				for(int c = 0; c < N; c++)
+				{
+					int stack = c / q;
+					if(stackKey[stack] != minStack || !isSmallestKey(colKey, c, stack * q, q))
+					{
+						continue;
+					}
+					usedStack[stack] = true;
+					stackOfSlot[0] = stack;
+					usedCol[c] = true;
+					cols[0] = c;
+					boolean finished = chooseRow(0, false);
+					usedCol[c] = false;
+					usedStack[stack] = false;
+					if(!finished)
+					{
+						return false;
+					}
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * @return true if no line of the group from start to start+size-1 has a smaller key than line
+		 */
+		static boolean isSmallestKey(long[] keys, int line, int start, int size)
+		{
+			for(int other = start; other < start + size; other++)
+			{
+				if(keys[other] < keys[line])
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+
+		int value(int r, int c)
+		{
+			return transposed ? board[c][r] : board[r][c];
+		}
+
+		/**
+		 * @return label of value, assigning the next label if the value has none yet
+		 */
+		int label(int value)
+		{
+			if(value == 0)
+			{
+				return 0;
+			}
+			if(labels[value] == 0)
+			{
+				labels[value] = ++numLabels;
+			}
+			return labels[value];
+		}
+
+		/**
+		 * Forgets the labels assigned after the first keep labels.
+		 */
+		void unlabel(int keep)
+		{
+			for(int value = 1; value <= N && numLabels > keep; value++)
+			{
+				if(labels[value] > keep)
+				{
+					labels[value] = 0;
+				}
+			}
+			numLabels = keep;
+		}
+
+		/**
+		 * Picks the row of row slot i, which reads position i of the first column.
+		 * @param less true if the branch is already smaller than the best board
+		 * @return false if the node budget ran out
+		 */
+		boolean chooseRow(int i, boolean less)
+		{
+			if(i == N)
+			{
+				return chooseColumn(1, less);
+			}
+			if(++nodes > maxNodes)
+			{
+				return false;
+			}
+			int version = bestVersion;
+			int slot = i / p;
+			boolean newBand = i % p == 0;
+			for(int band = 0; band < q; band++)
+			{
+				if(newBand ? usedBand[band] : band != bandOfSlot[slot])
+				{
+					continue;
+				}
+				if(newBand && slot > 0 && bandKey[band] < bandKey[bandOfSlot[slot - 1]])
+				{
+					continue;
+				}
+				for(int r = band * p; r < band * p + p; r++)
+				{
+					if(usedRow[r] || (!newBand && rowKey[r] < rowKey[rows[i - 1]]))
+					{
+						continue;
+					}
+					if(newBand && !isSmallestKey(rowKey, r, band * p, p))
+					{
+						continue;
+					}
+					if(version != bestVersion)
+					{
+						//the new best board shares this branch's prefix
+						less = false;
+						version = bestVersion;
+					}
+					int keep = numLabels;
+					int l = label(value(r, cols[0]));
+					boolean childLess = less;
+					if(!less && best != null)
+					{
+						if(l > best[i])
+						{
+							unlabel(keep);
+							continue;
+						}
+						childLess = l < best[i];
+					}
+					cur[i] = l;
+					rows[i] = r;
+					usedRow[r] = true;
+					if(newBand)
+					{
+						usedBand[band] = true;
+						bandOfSlot[slot] = band;
+					}
+					boolean finished = chooseRow(i + 1, childLess);
+					usedRow[r] = false;
+					if(newBand)
+					{
+						usedBand[band] = false;
+					}
+					unlabel(keep);
+					if(!finished)
+					{
+						return false;
+					}
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Picks the column of column slot j once all rows are placed.
+		 * @return false if the node budget ran out
+		 */
+		boolean chooseColumn(int j, boolean less)
+		{
+			if(j == N)
+			{
+				record();
+				return true;
+			}
+			if(++nodes > maxNodes)
+			{
+				return false;
+			}
+			int version = bestVersion;
+			int slot = j / q;
+			boolean newStack = j % q == 0;
+			for(int stack = 0; stack < p; stack++)
+			{
+				if(newStack ? usedStack[stack] : stack != stackOfSlot[slot])
+				{
+					continue;
+				}
+				if(newStack && stackKey[stack] < stackKey[stackOfSlot[slot - 1]])
+				{
+					continue;
+				}
+				for(int c = stack * q; c < stack * q + q; c++)
+				{
+					if(usedCol[c] || (!newStack && colKey[c] < colKey[cols[j - 1]]))
+					{
+						continue;
+					}
+					if(newStack && !isSmallestKey(colKey, c, stack * q, q))
+					{
+						continue;
+					}
+					if(version != bestVersion)
+					{
+						less = false;
+						version = bestVersion;
+					}
+					int keep = numLabels;
+					boolean childLess = less;
+					boolean larger = false;
+					for(int i = 0; i < N; i++)
+					{
+						int pos = j * N + i;
+						int l = label(value(rows[i], c));
+						if(!childLess && best != null)
+						{
+							if(l > best[pos])
+							{
+								larger = true;
+								break;
+							}
+							childLess = l < best[pos];
+						}
+						cur[pos] = l;
+					}
+					if(larger)
+					{
+						unlabel(keep);
+						continue;
+					}
+					cols[j] = c;
+					usedCol[c] = true;
+					if(newStack)
+					{
+						usedStack[stack] = true;
+						stackOfSlot[slot] = stack;
+					}
+					boolean finished = chooseColumn(j + 1, childLess);
+					usedCol[c] = false;
+					if(newStack)
+					{
+						usedStack[stack] = false;
+					}
+					unlabel(keep);
+					if(!finished)
+					{
+						return false;
+					}
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Called for a complete board that is not larger than the best one.
+		 */
+		void record()
+		{
+			if(best != null && !isSmaller())
+			{
+				return;
+			}
+			best = cur.clone();
+			bestRows = rows.clone();
+			bestCols = cols.clone();
+			bestLabels = labels.clone();
+			bestNumLabels = numLabels;
+			bestTransposed = transposed;
+			bestVersion++;
+		}
+
+		boolean isSmaller()
+		{
+			for(int pos = 0; pos < cur.length; pos++)
+			{
+				if(cur[pos] != best[pos])
+				{
+					return cur[pos] < best[pos];
+				}
+			}
+			return false;
+		}
+	}
+}
@@ -1,136 +1,153 @@
-package sudoku;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
-
-import cspSolver.Constraint;
-import cspSolver.ConstraintNetwork;
-import cspSolver.Variable;
-
-
-public class Converter {
-
-	public static ConstraintNetwork SudokuFileToConstraintNetwork(SudokuFile sf)
-	{
-		int [][] board = sf.getBoard();
-
-		List<Variable> variables = new ArrayList<Variable>();
-		int value = 0;
-
-		for (int i = 0; i < sf.getN(); i++)
-		{
-			for (int j = 0; j < sf.getN(); j++)
-			{
-				value = board[i][j];
-				List<Integer> domain = new ArrayList<Integer>();
-
-				if (value == 0)
-				{
-					for (int d = 1; d <= sf.getN(); d++)
-					{
-						domain.add(d);
-					}
-				}
-				else
-				{
-					domain.add(value);
-				}
-
-				int block = (i/sf.getP() * sf.getP()) + j/sf.getQ();
-
-				variables.add(new Variable(domain, i, j, block));
-			}
-		}
-
-		Map<Integer, List<Variable>> rows = new HashMap<Integer, List<Variable>>();
-		Map<Integer, List<Variable>> cols = new HashMap<Integer, List<Variable>>();
-		Map<Integer, List<Variable>> blocks = new HashMap<Integer, List<Variable>>();
-
-		for (Variable v : variables)
-		{
-			int row = v.row();
-			int col = v.col();
-			int block = v.block();
-
-			if (!rows.containsKey(row))
-			{
-				rows.put(row, new ArrayList<Variable>());
-			}
-
-			if (!cols.containsKey(col))
-			{
-				cols.put(col, new ArrayList<Variable>());
-			}
-
-			if (!blocks.containsKey(block))
-			{
-				blocks.put(block, new ArrayList<Variable>());
-			}
-			rows.get(row).add(v);
-			cols.get(col).add(v);
-			blocks.get(block).add(v);
-		}
-
-		ConstraintNetwork cn = new ConstraintNetwork();
-
-		for (Variable v : variables)
-		{
-			cn.add(v);
-		}
-
-		for (Entry<Integer, List<Variable>> e : rows.entrySet())
-		{
-			Constraint c = new Constraint();
-			for(Variable v : e.getValue())
-			{
-				c.addVariable(v);
-			}
-			cn.add(c);
-		}
-
-		for (Entry<Integer, List<Variable>> e : cols.entrySet())
-		{
-			Constraint c = new Constraint();
-			for(Variable v : e.getValue())
-			{
-				c.addVariable(v);
-			}
-			cn.add(c);
-		}
-
-		for (Entry<Integer, List<Variable>> e : blocks.entrySet())
-		{
-			Constraint c = new Constraint();
-			for(Variable v : e.getValue())
-			{
-				c.addVariable(v);
-			}
-			cn.add(c);
-		}
-		return cn;
-	}
-	
-	public static SudokuFile ConstraintNetworkToSudokuFile(ConstraintNetwork cn, int n, int p, int q)
-	{
-		SudokuFile sf = new SudokuFile();
-		int [][] board = new int[n][n];
-		int row = 0, col = 0;
-		for(Variable v : cn.getVariables())
-		{
-			board[row++][col] = v.getAssignment();
-			if(row == n)
-			{
-				row = 0;
-				col++;
-			}
-		}
-		sf.setBoard(board);
-		sf.setN(n);
-		sf.setP(p);
-		sf.setQ(q);
-		return sf;
-	}
-	
-}
+package sudoku;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import cspSolver.Constraint;
+import cspSolver.ConstraintNetwork;
+import cspSolver.Domain;
+import cspSolver.SumConstraint;
+import cspSolver.Topology;
+import cspSolver.Variable;
+
+
+public class Converter {
+
+	private static final ConcurrentMap<Long, Topology> TOPOLOGIES = new ConcurrentHashMap<Long, Topology>();
+
+	public static ConstraintNetwork SudokuFileToConstraintNetwork(SudokuFile sf)
+	{
+		int [][] board = sf.getBoard();
+		int N = sf.getN();
+		List<Cage> cages = sf.getCages();
+		Topology topology = cages.isEmpty() ? getTopology(N, sf.getP(), sf.getQ()) : compileTopology(N, sf.getP(), sf.getQ(), cages);
+		ConstraintNetwork cn = new ConstraintNetwork(topology);
+
+		int[] allValues = new int[N];
+		for (int d = 1; d <= N; d++)
+		{
+			allValues[d - 1] = d;
+		}
+		Domain fullDomain = new Domain(allValues);
+
+		List<Variable> variables = new ArrayList<Variable>(N * N);
+		int value = 0;
+
+		for (int i = 0; i < N; i++)
+		{
+			for (int j = 0; j < N; j++)
+			{
+				value = board[i][j];
+				Domain domain = value == 0 ? new Domain(fullDomain) : new Domain(value);
+
+				int block = (i/sf.getP() * sf.getP()) + j/sf.getQ();
+
+				Variable v = new Variable(domain, i, j, block);
+				variables.add(v);
+				cn.add(v);
+			}
+		}
+
+		int[] unitStart = topology.getUnitStart();
+		int[] unitVars = topology.getUnitVars();
+		for (int u = 0; u < topology.getNumUnits(); u++)
+		{
+			List<Variable> unit = new ArrayList<Variable>(unitStart[u + 1] - unitStart[u]);
+			Constraint c = u < 3 * N ? new Constraint(unit) : new SumConstraint(cages.get(u - 3 * N).getSum(), N, unit);
+			for (int k = unitStart[u]; k < unitStart[u + 1]; k++)
+			{
+				c.addVariable(variables.get(unitVars[k]));
+			}
+			cn.add(c);
+		}
+		return cn;
+	}
+
+	/**
+	 * Returns the shared topology of N x N boards with p x q blocks, compiling it on 
+	 * first use. Topologies are immutable, so one instance serves every puzzle and 
+	 * thread. 
+	 */
+	public static Topology getTopology(int N, int p, int q)
+	{
+		long key = ((long) N << 42) | ((long) p << 21) | q;
+		return TOPOLOGIES.computeIfAbsent(key, k -> compileTopology(N, p, q));
+	}
+
+	/**
+	 * Compiles the structure of an N x N board with p x q blocks. Variable i*N+j is 
+	 * the cell in row i and column j; units 0..N-1 are the rows, N..2N-1 the columns 
+	 * and 2N..3N-1 the blocks. 
+	 */
+	public static Topology compileTopology(int N, int p, int q)
+	{
+		int[] unitStart = new int[3 * N + 1];
+		for (int u = 0; u <= 3 * N; u++)
+		{
+			unitStart[u] = u * N;
+		}
+
+		int[] unitVars = new int[3 * N * N];
+		int[] fill = new int[3 * N];
+		for (int i = 0; i < N; i++)
+		{
+			for (int j = 0; j < N; j++)
+			{
+				int var = i * N + j;
+				int block = (i/p * p) + j/q;
+				unitVars[unitStart[i] + fill[i]++] = var;
+				unitVars[unitStart[N + j] + fill[N + j]++] = var;
+				unitVars[unitStart[2 * N + block] + fill[2 * N + block]++] = var;
+			}
+		}
+		return new Topology(N * N, unitStart, unitVars);
+	}
+
+	/**
+	 * Compiles the structure of a killer sudoku: the units of the board followed by 
+	 * one unit per cage, in the order of the cages. Not cached, as cages differ 
+	 * between puzzles. 
+	 */
+	public static Topology compileTopology(int N, int p, int q, List<Cage> cages)
+	{
+		Topology board = getTopology(N, p, q);
+		int numUnits = board.getNumUnits();
+		int size = board.getUnitVars().length;
+		for (Cage cage : cages)
+		{
+			size += cage.size();
+		}
+
+		int[] unitStart = Arrays.copyOf(board.getUnitStart(), numUnits + cages.size() + 1);
+		int[] unitVars = Arrays.copyOf(board.getUnitVars(), size);
+		int pos = board.getUnitVars().length;
+		for (int c = 0; c < cages.size(); c++)
+		{
+			Cage cage = cages.get(c);
+			for (int i = 0; i < cage.size(); i++)
+			{
+				unitVars[pos++] = cage.getRow(i) * N + cage.getCol(i);
+			}
+			unitStart[numUnits + c + 1] = pos;
+		}
+		return new Topology(N * N, unitStart, unitVars);
+	}
+	
+	public static SudokuFile ConstraintNetworkToSudokuFile(ConstraintNetwork cn, int n, int p, int q)
+	{
+		SudokuFile sf = new SudokuFile();
+		int [][] board = new int[n][n];
+		for(Variable v : cn.getVariables())
+		{
+			board[v.row()][v.col()] = v.getAssignment();
+		}
+		sf.setBoard(board);
+		sf.setN(n);
+		sf.setP(p);
+		sf.setQ(q);
+		return sf;
+	}
+	
+}
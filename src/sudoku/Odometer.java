@@ -1,33 +1,71 @@
-package sudoku;
-import java.util.Arrays;
-
-
-public class Odometer {
-	public static int odometerToInt(String value) {
-		int retVal = Arrays.binarySearch(ODOMETER, value.toUpperCase());
-		if(retVal < 0)
-		{
-			System.err.println("odometerToInt failed. Invlaid value " + value + "Replaced with 0");
-			retVal = 0;
-		}
-		return retVal;
-	}
-	
-	public static String intToOdometer(int num)
-	{
-		String retVal;
-		try{
-			retVal = ODOMETER[num];
-		}catch(IndexOutOfBoundsException e){
-			System.err.println("intToOdometer failed. Invalid number " + num + " Replaced with 0");
-			retVal = "0";
-		}
-		return retVal;
-	}
-
-	private static final String[] ODOMETER = 
-		{"0","1","2","3","4","5","6","7","8","9",
-		 "A","B","C","D","E","F","G","H","I","J",
-		 "K","L","M","N","O","P","Q","R","S","T",
-		 "U","V","W","X","Y","Z"};
-}
+package sudoku;
+import java.util.Arrays;
+
+
+public class Odometer {
+	public static int odometerToInt(String value) {
+		int retVal = Arrays.binarySearch(ODOMETER, value.toUpperCase());
+		if(retVal < 0)
+		{
+			System.err.println("odometerToInt failed. Invlaid value " + value + "Replaced with 0");
+			retVal = 0;
+		}
+		return retVal;
+	}
+	
+	public static String intToOdometer(int num)
+	{
+		String retVal;
+		try{
+			retVal = ODOMETER[num];
+		}catch(IndexOutOfBoundsException e){
+			System.err.println("intToOdometer failed. Invalid number " + num + " Replaced with 0");
+			retVal = "0";
+		}
+		return retVal;
+	}
+
+	/**
+	 * Odometer symbols only cover the values 0 to 35. Boards with larger values are 
+	 * written as whitespace separated integers instead.
+	 * @param N edge length of the board
+	 * @return true if the board's values are written as integers
+	 */
+	public static boolean usesIntegerTokens(int N)
+	{
+		return N >= ODOMETER.length;
+	}
+
+	/**
+	 * @param N edge length of the board the token belongs to
+	 * @return value of a board token, either an odometer symbol or an integer depending on N
+	 */
+	public static int tokenToInt(String token, int N)
+	{
+		if(!usesIntegerTokens(N))
+		{
+			return odometerToInt(token);
+		}
+		try{
+			return Integer.parseInt(token);
+		}catch(NumberFormatException e){
+			System.err.println("tokenToInt failed. Invalid value " + token + " Replaced with 0");
+			return 0;
+		}
+	}
+
+	/**
+	 * @param N edge length of the board the value belongs to
+	 * @return token for a board value, either an odometer symbol or an integer depending on N
+	 */
+	public static String intToToken(int num, int N)
+	{
+		return usesIntegerTokens(N) ? Integer.toString(num) : intToOdometer(num);
+	}
+
+	private static final String[] ODOMETER = 
+		{"0","1","2","3","4","5","6","7","8","9",
+		 "A","B","C","D","E","F","G","H","I","J",
+		 "K","L","M","N","O","P","Q","R","S","T",
+		 "U","V","W","X","Y","Z"};
+}
@@ -0,0 +1,115 @@
+package sudoku;
+
+/**
+ * Cheap numeric description of a puzzle for choosing a solver: its shape, how many and
+ * how evenly spread its clues are, and what propagation alone achieves on it
+ * (see DifficultyRating). Computing them costs about as much as rating the puzzle.
+ */
+public class PuzzleFeatures {
+
+	/** Names of the features, in the order of toArray(). */
+	public static final String[] NAMES = { "N", "blockRatio", "clueFraction", "unitFillVariance",
+			"propagatedFraction", "log10SearchSpacePerCell", "rounds", "hardestRule", "difficulty" };
+
+	//===============================================================================
+	// Properties
+	//===============================================================================
+
+	private final double[] values;
+
+	//===============================================================================
+	// Constructors
+	//===============================================================================
+
+	private PuzzleFeatures(double[] values)
+	{
+		this.values = values;
+	}
+
+	public static PuzzleFeatures of(SudokuFile sf)
+	{
+		int N = sf.getN();
+		int p = sf.getP();
+		int q = sf.getQ();
+		int[][] board = sf.getBoard();
+
+		//fill of every row, column and block
+		int[] fill = new int[3 * N];
+		int clues = 0;
+		for(int i = 0; i < N; i++)
+		{
+			for(int j = 0; j < N; j++)
+			{
+				if(board[i][j] != 0)
+				{
+					clues++;
+					fill[i]++;
+					fill[N + j]++;
+					fill[2 * N + (i / p) * p + j / q]++;
+				}
+			}
+		}
+		double mean = clues * 3.0 / fill.length;
+		double variance = 0;
+		for(int f : fill)
+		{
+			variance += (f - mean) * (f - mean);
+		}
+		variance /= fill.length * (double) N * N;
+
+		double[] values = new double[NAMES.length];
+		values[0] = N;
+		values[1] = p / (double) q;
+		values[2] = clues / (double) (N * N);
+		values[3] = variance;
+		if(N <= 64)
+		{
+			DifficultyRating rating = DifficultyRating.rate(sf);
+			int empty = N * N - clues;
+			values[4] = empty == 0 ? 1 : (empty - rating.getUnsolvedCells()) / (double) empty;
+			values[5] = rating.getLog10SearchSpace() / (N * N);
+			values[6] = rating.getRounds();
+			int hardest = 0;
+			for(DifficultyRating.Rule rule : rating.getRulesUsed())
+			{
+				hardest = rule.ordinal() + 1;
+			}
+			values[7] = hardest;
+			values[8] = rating.getDifficulty().ordinal();
+		}
+		else
+		{
+			//too large to rate: assume propagation does nothing
+			values[5] = Math.log10(N);
+			values[8] = DifficultyRating.Difficulty.EXPERT.ordinal();
+		}
+		return new PuzzleFeatures(values);
+	}
+
+	//===============================================================================
+	// Accessors
+	//===============================================================================
+
+	/**
+	 * @return a copy of the feature values, in the order of NAMES
+	 */
+	public double[] toArray()
+	{
+		return values.clone();
+	}
+
+	public double get(int feature)
+	{
+		return values[feature];
+	}
+
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder();
+		for(int f = 0; f < NAMES.length; f++)
+		{
+			sb.append(f == 0 ? "" : ", ").append(NAMES[f]).append("=").append(String.format("%.3g", values[f]));
+		}
+		return sb.toString();
+	}
+}
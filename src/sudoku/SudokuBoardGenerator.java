@@ -1,111 +1,334 @@
-package sudoku;
-import java.util.Random;
-
-
-public class SudokuBoardGenerator {
-
-	public static SudokuFile generateBoard(int N, int p, int q, int numAssignments)
-	{	
-		return generateBoard(N, p, q, numAssignments, 5000);
-	}
-	
-	public static SudokuFile generateBoard(int N, int p, int q, int numAssignments, long timeout)
-	{
-		//given a SudokuFile with N, P, Q, creates a board with the given params
-		//and assigns it to the board of the SudokuFile.
-		//timeout represents the time in ms allowed to created the SudokuFile
-		SudokuFile sf = new SudokuFile(N, p, q);
-		int[][] tempBoard = new int[sf.getN()][sf.getN()];
-		if(numAssignments > sf.getN()*sf.getN())
-		{
-			System.out.println("Number of assignments exceeds available spaces in board. Returning SudokuFile with an empty board");
-			return sf;
-		}
-		Random integerPicker = new Random();
-		long startTime = System.currentTimeMillis();
-		long currentTime;
-		for(int i = 0; i < numAssignments; i++)
-		{
-			int randomRow = integerPicker.nextInt(sf.getN()); //0 to N-1
-			int randomColumn = integerPicker.nextInt(sf.getN()); //0 to N-1
-			int randomAssignment = integerPicker.nextInt(sf.getN())+1; //1 to N
-			if(tempBoard [randomRow][randomColumn] == 0 && checkConstraints(randomRow, randomColumn, randomAssignment, sf, tempBoard) )
-			{
-				tempBoard[randomRow][randomColumn] = randomAssignment;
-			}
-			else
-			{
-				i--;
-				currentTime = System.currentTimeMillis();
-				if(currentTime - startTime > timeout)
-				{
-					System.out.println("Timeout at "+i+" elements");
-					tempBoard = new int[sf.getN()][sf.getN()];
-					break;
-				}
-			}
-		}
-		sf.setBoard(tempBoard);
-		return sf;
-	}
-
-
-	private static boolean checkConstraints(int row, int col, int value, SudokuFile sf, int[][] board)
-	{
-		if(checkRow(row, value, sf.getN(), board) 
-				&& checkColumn(col, value, sf.getN(), board) 
-				&& checkBox(row, col, value, sf.getP(), sf.getQ(), board))
-		{
-			return true;
-		}
-		
-		return false; 
-	}
-
-	public static boolean checkRow(int row, int value, int N, int[][] board)
-	{
-		for(int i = 0; i < N; i++)
-		{
-			if(board[row][i] == value)
-			{
-				return false;
-			}
-		}
-		return true;
-	}
-
-	public static boolean checkColumn(int column, int value, int N, int[][] board)
-	{
-		for (int i = 0; i < N; i++)
-		{
-			if(board[i][column] == value)
-			{
-				return false;
-			}
-		}
-
-		return true;
-	}
-
-	public static boolean checkBox(int row, int column, int value, int p, int q, int[][] board)
-	{
-		int rDiv = row/p;
-		int cDiv = column/q;
-		for(int i = rDiv * p; i < (rDiv + 1) * p; i++)
-		{
-			for(int j = cDiv * q; j < (cDiv + 1) * q; j++)
-			{
-				try{
-				if(board[i][j] == value)
-				{
-					return false;
-				}
-				}catch(ArrayIndexOutOfBoundsException e)
-				{
-					System.out.println(p + " "+ q);
-				}
-			}
-		}
-		return true;
-	}
-}
+package sudoku;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import cspSolver.BTSolver;
+import cspSolver.SolveOutcome;
+import cspSolver.SolveResult;
+import cspSolver.BTSolver.ConsistencyCheck;
+import cspSolver.BTSolver.NakedCheck;
+import cspSolver.BTSolver.ValueSelectionHeuristic;
+import cspSolver.BTSolver.VariableSelectionHeuristic;
+
+
+public class SudokuBoardGenerator {
+
+	//assignments allowed to complete a solved board, and to look for a second solution
+	private static final long SOLVE_NODE_BUDGET = 200000;
+	private static final long UNIQUENESS_NODE_BUDGET = 2000;
+	private static final int SOLVE_ATTEMPTS = 10;
+
+	public static SudokuFile generateBoard(int N, int p, int q, int numAssignments)
+	{	
+		return generateBoard(N, p, q, numAssignments, 5000);
+	}
+	
+	public static SudokuFile generateBoard(int N, int p, int q, int numAssignments, long timeout)
+	{
+		//given a SudokuFile with N, P, Q, creates a board with the given params
+		//and assigns it to the board of the SudokuFile.
+		//timeout represents the time in ms allowed to created the SudokuFile
+		SudokuFile sf = new SudokuFile(N, p, q);
+		int[][] tempBoard = new int[sf.getN()][sf.getN()];
+		if(numAssignments > sf.getN()*sf.getN())
+		{
+			System.out.println("Number of assignments exceeds available spaces in board. Returning SudokuFile with an empty board");
+			return sf;
+		}
+		Random integerPicker = new Random();
+		long startTime = System.currentTimeMillis();
+		long currentTime;
+		for(int i = 0; i < numAssignments; i++)
+		{
+			int randomRow = integerPicker.nextInt(sf.getN()); //0 to N-1
+			int randomColumn = integerPicker.nextInt(sf.getN()); //0 to N-1
+			int randomAssignment = integerPicker.nextInt(sf.getN())+1; //1 to N
+			if(tempBoard [randomRow][randomColumn] == 0 && checkConstraints(randomRow, randomColumn, randomAssignment, sf, tempBoard) )
+			{
+				tempBoard[randomRow][randomColumn] = randomAssignment;
+			}
+			else
+			{
+				i--;
+				currentTime = System.currentTimeMillis();
+				if(currentTime - startTime > timeout)
+				{
+					System.out.println("Timeout at "+i+" elements");
+					tempBoard = new int[sf.getN()][sf.getN()];
+					break;
+				}
+			}
+		}
+		sf.setBoard(tempBoard);
+		return sf;
+	}
+
+	/**
+	 * Generates a puzzle that has exactly one solution. A full grid is solved first, then 
+	 * givens are removed in random order as long as the puzzle stays uniquely solvable. 
+	 * The uniqueness check of each removal is bounded; a given whose removal is not proven 
+	 * to keep the solution unique within the budget is kept. If no further given can be 
+	 * removed before reaching numAssignments, the puzzle is returned with more givens 
+	 * than requested. 
+	 * @throws IllegalStateException if no solved board is found within the budget
+	 * @param numAssignments target number of givens
+	 */
+	public static SudokuFile generateUniqueBoard(int N, int p, int q, int numAssignments)
+	{
+		return generateUniqueBoard(N, p, q, numAssignments, ThreadLocalRandom.current());
+	}
+
+	public static SudokuFile generateUniqueBoard(int N, int p, int q, int numAssignments, Random random)
+	{
+		SudokuFile solved = generateSolvedBoard(N, p, q, random);
+		int[][] board = copyBoard(solved.getBoard());
+		int givens = N * N;
+
+		List<Integer> cells = new ArrayList<Integer>();
+		for(int i = 0; i < N * N; i++)
+		{
+			cells.add(i);
+		}
+		Collections.shuffle(cells, random);
+
+		for(int cell : cells)
+		{
+			if(givens <= numAssignments)
+			{
+				break;
+			}
+			int row = cell / N;
+			int col = cell % N;
+			int value = board[row][col];
+			board[row][col] = 0;
+			if(hasOtherSolution(new SudokuFile(N, p, q, copyBoard(board)), row, col, value))
+			{
+				board[row][col] = value;
+			}
+			else
+			{
+				givens--;
+			}
+		}
+		return new SudokuFile(N, p, q, board);
+	}
+
+	/**
+	 * Generates count unique-solution puzzles in parallel.
+	 * @param numThreads number of generation threads
+	 * @return exactly count puzzles
+	 * @throws IllegalStateException if a generation fails or the thread is interrupted
+	 * @see #generateUniqueBoard(int, int, int, int)
+	 */
+	public static List<SudokuFile> generateUniqueBoards(final int N, final int p, final int q, final int numAssignments, int count, int numThreads)
+	{
+		ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+		List<Future<SudokuFile>> futures = new ArrayList<Future<SudokuFile>>();
+		for(int i = 0; i < count; i++)
+		{
+			futures.add(pool.submit(new Callable<SudokuFile>(){
+				@Override
+				public SudokuFile call() {
+					return generateUniqueBoard(N, p, q, numAssignments);
+				}
+			}));
+		}
+		List<SudokuFile> boards = new ArrayList<SudokuFile>();
+		try
+		{
+			for(Future<SudokuFile> f : futures)
+			{
+				boards.add(f.get());
+			}
+		}catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted after generating " + boards.size() + " of " + count + " boards", e);
+		}catch(ExecutionException e)
+		{
+			throw new IllegalStateException("Generating board " + (boards.size() + 1) + " of " + count + " failed", e.getCause());
+		}finally
+		{
+			pool.shutdownNow();
+		}
+		return boards;
+	}
+
+	/**
+	 * Generates a completely filled, valid board. The first row is a random permutation 
+	 * that the solver completes within a node budget, with a new permutation if it runs 
+	 * out; bands, stacks, and the rows and columns within them are then shuffled.
+	 * @throws IllegalStateException if no attempt completes the board
+	 */
+	public static SudokuFile generateSolvedBoard(int N, int p, int q, Random random)
+	{
+		int[][] solution = null;
+		for(int attempt = 0; solution == null; attempt++)
+		{
+			if(attempt == SOLVE_ATTEMPTS)
+			{
+				throw new IllegalStateException("No solved " + N + "x" + N + " board found in " + SOLVE_ATTEMPTS + " attempts");
+			}
+			int[][] board = new int[N][N];
+			List<Integer> firstRow = new ArrayList<Integer>();
+			for(int i = 1; i <= N; i++)
+			{
+				firstRow.add(i);
+			}
+			Collections.shuffle(firstRow, random);
+			for(int j = 0; j < N; j++)
+			{
+				board[0][j] = firstRow.get(j);
+			}
+
+			SolveResult result = createSolver(new SudokuFile(N, p, q, board)).solve(SOLVE_NODE_BUDGET);
+			if(result.isSolved())
+			{
+				solution = result.getSolution().getBoard();
+			}
+		}
+
+		int[] rows = shuffledLines(N, p, random);
+		int[] cols = shuffledLines(N, q, random);
+		int[][] shuffled = new int[N][N];
+		for(int i = 0; i < N; i++)
+		{
+			for(int j = 0; j < N; j++)
+			{
+				shuffled[i][j] = solution[rows[i]][cols[j]];
+			}
+		}
+		return new SudokuFile(N, p, q, shuffled);
+	}
+
+	/**
+	 * Checks whether puzzle has a solution in which (row, col) is not value. The puzzle 
+	 * without the given at (row, col) is known to have a single solution with value there, 
+	 * so any other solution is a second one. 
+	 * @return false only if the search proves there is none within the node budget
+	 */
+	private static boolean hasOtherSolution(SudokuFile puzzle, int row, int col, int value)
+	{
+		BTSolver solver = createSolver(puzzle);
+		solver.getNetwork().getVariables().get(row * puzzle.getN() + col).removeValueFromDomain(value);
+		return solver.solve(UNIQUENESS_NODE_BUDGET).getOutcome() != SolveOutcome.UNSAT;
+	}
+
+	private static BTSolver createSolver(SudokuFile sf)
+	{
+		BTSolver solver = new BTSolver(sf);
+		solver.setConsistencyChecks(ConsistencyCheck.ArcConsistency);
+		solver.setValueSelectionHeuristic(ValueSelectionHeuristic.None);
+		solver.setVariableSelectionHeuristic(VariableSelectionHeuristic.MinimumRemainingValue);
+		solver.setNakedConsistency(NakedCheck.None);
+		return solver;
+	}
+
+	/**
+	 * @param size number of lines in a group (rows per block or columns per block)
+	 * @return a permutation of 0..N-1 that shuffles the groups and the lines within each group
+	 */
+	private static int[] shuffledLines(int N, int size, Random random)
+	{
+		List<Integer> groups = new ArrayList<Integer>();
+		for(int g = 0; g < N / size; g++)
+		{
+			groups.add(g);
+		}
+		Collections.shuffle(groups, random);
+
+		int[] lines = new int[N];
+		int index = 0;
+		for(int g : groups)
+		{
+			List<Integer> within = new ArrayList<Integer>();
+			for(int i = 0; i < size; i++)
+			{
+				within.add(g * size + i);
+			}
+			Collections.shuffle(within, random);
+			for(int line : within)
+			{
+				lines[index++] = line;
+			}
+		}
+		return lines;
+	}
+
+	private static int[][] copyBoard(int[][] board)
+	{
+		int[][] copy = new int[board.length][];
+		for(int i = 0; i < board.length; i++)
+		{
+			copy[i] = board[i].clone();
+		}
+		return copy;
+	}
+
+	private static boolean checkConstraints(int row, int col, int value, SudokuFile sf, int[][] board)
+	{
+		if(checkRow(row, value, sf.getN(), board) 
+				&& checkColumn(col, value, sf.getN(), board) 
+				&& checkBox(row, col, value, sf.getP(), sf.getQ(), board))
+		{
+			return true;
+		}
+		
+		return false; 
+	}
+
+	public static boolean checkRow(int row, int value, int N, int[][] board)
+	{
+		for(int i = 0; i < N; i++)
+		{
+			if(board[row][i] == value)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public static boolean checkColumn(int column, int value, int N, int[][] board)
+	{
+		for (int i = 0; i < N; i++)
+		{
+			if(board[i][column] == value)
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	public static boolean checkBox(int row, int column, int value, int p, int q, int[][] board)
+	{
+		int rDiv = row/p;
+		int cDiv = column/q;
+		for(int i = rDiv * p; i < (rDiv + 1) * p; i++)
+		{
+			for(int j = cDiv * q; j < (cDiv + 1) * q; j++)
+			{
+				try{
+				if(board[i][j] == value)
+				{
+					return false;
+				}
+				}catch(ArrayIndexOutOfBoundsException e)
+				{
+					System.out.println(p + " "+ q);
+				}
+			}
+		}
+		return true;
+	}
+}
@@ -1,76 +1,212 @@
-package sudoku;
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.io.IOException;
-import java.io.Reader;
-
-
-public class SudokuBoardReader {
-
-	public static SudokuFile readFile(String filePath)
-	{
-		//Get filePath. from path and filename. If path is null, 
-		//it'll default to the current directory
-
-		try (Reader reader = new FileReader(filePath)) {
-			try(BufferedReader br = new BufferedReader(reader)){
-				SudokuFile sF = new SudokuFile();
-				String line;
-				int lineCounter = 0;
-
-				while((line = br.readLine()) != null)
-				{	
-					String[] lineParts = line.split("\\s+");
-					if(lineCounter == 0)
-					{
-						setSudokuFileParameters(sF, lineParts);//parameter line: contains p, q, N
-					}
-					else
-					{
-						parseLineOfSudokuBoard(sF, lineParts, lineCounter-1);//obo due to parameters taking up first line
-					}
-					lineCounter++;
-				}
-				if(lineCounter == 0)
-				{
-					System.out.println("Input file \""+filePath+"\" was empty");
-				}
-				else if(lineCounter < sF.getN())
-				{
-					System.out.println("Incomplete or Emtpy board for file " + filePath+". Please be advised");
-				}
-				return sF;
-			} 
-		} catch (IOException e1) {
-			// TODO Auto-generated catch block
-			System.err.print("Invalid file:"+filePath+". Skipping to the next file.\n");
-		} catch (NumberFormatException e2) {
-			e2.printStackTrace();
-		}
-		//Something wrong happened if it reaches here
-		return new SudokuFile();
-	}
-
-	//helpers
-	private static void setSudokuFileParameters(SudokuFile sf, String[] params) throws IOException
-	{
-		if(params.length != 3) throw new IOException("Params invalid in file.");
-		sf.setN(Integer.parseInt(params[0]));
-		sf.setP(Integer.parseInt(params[1]));
-		sf.setQ(Integer.parseInt(params[2]));
-	}
-	
-	private static void parseLineOfSudokuBoard(SudokuFile sf, String[] values, int rowNumber) 
-	{
-		//writes values to the row set in param rowNumber
-		if(sf.getBoard() == null)
-		{
-			sf.setBoard(new int[sf.getN()][sf.getN()]);
-		}
-		int[][] board = sf.getBoard();
-		for(int i = 0; i < values.length; i++)
-		{
-			board[rowNumber][i] = Odometer.odometerToInt(values[i]);
-		}
-	}
+package sudoku;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashSet;
+import java.util.Set;
+
+
+public class SudokuBoardReader {
+
+	public static SudokuFile readFile(String filePath)
+	{
+		//Get filePath. from path and filename. If path is null, 
+		//it'll default to the current directory
+
+		try (Reader reader = new FileReader(filePath)) {
+			try(BufferedReader br = new BufferedReader(reader)){
+				SudokuFile sF = new SudokuFile();
+				sF.setName(new File(filePath).getName());
+				String line;
+				int lineCounter = 0;
+
+				while((line = br.readLine()) != null)
+				{	
+					String[] lineParts = line.trim().split("\\s+");
+					if(lineParts[0].equals("cage"))
+					{
+						parseCage(sF, lineParts);//killer sudoku cage, does not count as a board line
+						continue;
+					}
+					if(lineCounter == 0)
+					{
+						setSudokuFileParameters(sF, lineParts);//parameter line: contains p, q, N
+					}
+					else
+					{
+						parseLineOfSudokuBoard(sF, lineParts, lineCounter-1);//obo due to parameters taking up first line
+					}
+					lineCounter++;
+				}
+				if(lineCounter == 0)
+				{
+					System.out.println("Input file \""+filePath+"\" was empty");
+				}
+				else if(lineCounter < sF.getN())
+				{
+					System.out.println("Incomplete or Emtpy board for file " + filePath+". Please be advised");
+				}
+				return sF;
+			} 
+		} catch (IOException e1) {
+			// TODO Auto-generated catch block
+			System.err.print("Invalid file:"+filePath+". Skipping to the next file.\n");
+		} catch (NumberFormatException e2) {
+			e2.printStackTrace();
+		}
+		//Something wrong happened if it reaches here
+		return new SudokuFile();
+	}
+
+	/**
+	 * Reads the next puzzle of a stream of puzzles, e.g. standard input. Accepts the file 
+	 * format as well as the output of SudokuFile.toString(): a "N: n P: p Q: q" header, 
+	 * "|" separators and lines of dashes are skipped. Blank lines between puzzles are 
+	 * ignored, and the cage lines right after a board belong to it. 
+	 * @param br stream positioned at a puzzle or at blank lines before one
+	 * @return the puzzle, null at the end of the stream
+	 * @throws IOException if the stream cannot be read or the puzzle is malformed
+	 */
+	public static SudokuFile read(BufferedReader br) throws IOException
+	{
+		return read(br, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Reads the next puzzle of a stream of puzzles, rejecting boards larger than maxN by 
+	 * maxN before allocating them, e.g. when the stream comes from a client. 
+	 * @throws BoardTooLargeException if the header gives an N above maxN
+	 * @see #read(BufferedReader)
+	 */
+	public static SudokuFile read(BufferedReader br, int maxN) throws IOException
+	{
+		String line;
+		do
+		{
+			line = br.readLine();
+			if(line == null)
+			{
+				return null;
+			}
+		} while(line.trim().isEmpty());
+
+		SudokuFile sF = new SudokuFile();
+		String[] header = line.trim().split("\\s+");
+		try
+		{
+			if(header[0].equals("N:") && header.length == 6)
+			{
+				setSudokuFileParameters(sF, new String[] { header[1], header[3], header[5] });
+			}
+			else
+			{
+				setSudokuFileParameters(sF, header);
+			}
+			if(sF.getN() < 1 || sF.getN() != sF.getP() * sF.getQ())
+			{
+				throw new IOException("Invalid board parameters: " + line);
+			}
+			if(sF.getN() > maxN)
+			{
+				throw new BoardTooLargeException("Board size " + sF.getN() + " above " + maxN);
+			}
+			int row = 0;
+			while(row < sF.getN())
+			{
+				line = br.readLine();
+				if(line == null)
+				{
+					throw new IOException("Board ends after " + row + " of " + sF.getN() + " rows");
+				}
+				String trimmed = line.trim();
+				if(trimmed.isEmpty() || trimmed.replace("-", "").trim().isEmpty())
+				{
+					continue;
+				}
+				String[] tokens = trimmed.replace("|", " ").trim().split("\\s+");
+				if(tokens.length != sF.getN())
+				{
+					throw new IOException("Row " + row + " has " + tokens.length + " values instead of " + sF.getN());
+				}
+				parseLineOfSudokuBoard(sF, tokens, row++);
+			}
+			while(true)
+			{
+				br.mark(1 << 16);
+				line = br.readLine();
+				if(line == null)
+				{
+					break;
+				}
+				String[] parts = line.trim().split("\\s+");
+				if(!parts[0].equals("cage"))
+				{
+					br.reset();
+					break;
+				}
+				parseCage(sF, parts);
+			}
+		}
+		catch(NumberFormatException e)
+		{
+			throw new IOException("Invalid number in puzzle: " + e.getMessage());
+		}
+		return sF;
+	}
+
+	//helpers
+	private static void setSudokuFileParameters(SudokuFile sf, String[] params) throws IOException
+	{
+		if(params.length != 3) throw new IOException("Params invalid in file.");
+		sf.setN(Integer.parseInt(params[0]));
+		sf.setP(Integer.parseInt(params[1]));
+		sf.setQ(Integer.parseInt(params[2]));
+	}
+	
+	/**
+	 * Parses a cage line: "cage <sum> <row>,<col> <row>,<col> ...", with 0-based rows and columns.
+	 * The cells must be distinct cells of the board and the sum must be reachable by as many 
+	 * distinct values of 1..N. 
+	 */
+	private static void parseCage(SudokuFile sf, String[] parts) throws IOException
+	{
+		if(parts.length < 3) throw new IOException("Cage without cells in file.");
+		int N = sf.getN();
+		int size = parts.length - 2;
+		if(size > N) throw new IOException("Cage of " + size + " cells on a board of size " + N + " in file.");
+		int sum = Integer.parseInt(parts[1]);
+		int[] rows = new int[size];
+		int[] cols = new int[size];
+		Set<Long> used = new HashSet<Long>();
+		for(int i = 0; i < size; i++)
+		{
+			String[] cell = parts[i + 2].split(",");
+			if(cell.length != 2) throw new IOException("Invalid cage cell " + parts[i + 2] + " in file.");
+			rows[i] = Integer.parseInt(cell[0]);
+			cols[i] = Integer.parseInt(cell[1]);
+			if(rows[i] < 0 || rows[i] >= N || cols[i] < 0 || cols[i] >= N) throw new IOException("Cage cell " + parts[i + 2] + " outside the board in file.");
+			if(!used.add((long) rows[i] * N + cols[i])) throw new IOException("Cage cell " + parts[i + 2] + " repeated in file.");
+		}
+		//the size smallest and the size largest values of 1..N
+		long min = (long) size * (size + 1) / 2;
+		long max = (long) size * N - (long) size * (size - 1) / 2;
+		if(sum < min || sum > max) throw new IOException("Cage sum " + sum + " cannot be made by " + size + " distinct values of 1.." + N + " in file.");
+		sf.addCage(new Cage(sum, rows, cols));
+	}
+	
+	private static void parseLineOfSudokuBoard(SudokuFile sf, String[] values, int rowNumber) 
+	{
+		//writes values to the row set in param rowNumber
+		if(sf.getBoard() == null)
+		{
+			sf.setBoard(new int[sf.getN()][sf.getN()]);
+		}
+		int[][] board = sf.getBoard();
+		for(int i = 0; i < values.length; i++)
+		{
+			board[rowNumber][i] = Odometer.tokenToInt(values[i], sf.getN());
+		}
+	}
 }
\ No newline at end of file
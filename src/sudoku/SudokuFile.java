@@ -1,125 +1,207 @@
-package sudoku;
-
-
-public class SudokuFile {
-	
-	/**
-	 * p, q, N represent the dimensions of a game board.
-	 * Assuming a game board has values p = 3, q = 4, N = 12, 
-	 * an empty board will look like this. 
-	 * 
-	 * [] [] [] [] | [] [] [] [] | [] [] [] []
-	 * [] [] [] [] | [] [] [] [] | [] [] [] []
-	 * [] [] [] [] | [] [] [] [] | [] [] [] []
-	 * ---------------------------------------
-	 * [] [] [] [] | [] [] [] [] | [] [] [] []
-	 * [] [] [] [] | [] [] [] [] | [] [] [] []
-	 * [] [] [] [] | [] [] [] [] | [] [] [] []
-	 * ---------------------------------------
-	 * [] [] [] [] | [] [] [] [] | [] [] [] []
-	 * [] [] [] [] | [] [] [] [] | [] [] [] []
-	 * [] [] [] [] | [] [] [] [] | [] [] [] []
-	 * ---------------------------------------
-	 * [] [] [] [] | [] [] [] [] | [] [] [] []
-	 * [] [] [] [] | [] [] [] [] | [] [] [] []
-	 * [] [] [] [] | [] [] [] [] | [] [] [] []
-	 * 
-	 */
-	private int p;//number of rows in a block && number of blocks per row
-	private int q;//number of columns in a block && number of blocks per column
-	private int N;//number of cells in a block && edge length of a NxN puzzle
-
-	
-	private int[][] board = null;
-	
-	protected SudokuFile(){}
-	
-	public SudokuFile(int N, int p, int q, int[][] board)
-	{
-		if(N != p * q || N < 1)
-		{
-			System.out.println("Board parameters invalid. Creating a 9x9 sudoku file instead.");
-			setP(3);
-			setQ(3);
-			setN(9);
-			setBoard(new int[9][9]);
-		}
-		else
-		{
-			setP(p);
-			setQ(q);
-			setN(N);
-			setBoard(board==null ? new int[9][9] : board);
-		}
-	}
-	
-	public SudokuFile(int N, int p, int q)
-	{
-		this(N,p,q,null);
-	}
-	
-	public int getP() {
-		return p;
-	}
-
-	protected void setP(int p) {
-		this.p = p;
-	}
-
-	public int getQ() {
-		return q;
-	}
-
-	protected void setQ(int q) {
-		this.q = q;
-	}
-
-	public int getN() {
-		return N;
-	}
-
-	protected void setN(int n) {
-		N = n;
-	}
-
-	public int[][] getBoard() {
-		return board;
-	}
-
-	protected void setBoard(int[][] board) {
-		this.board = board;
-	}
-	
-	public String toString()
-	{
-		StringBuilder sb = new StringBuilder();
-		sb.append("N: ");
-		sb.append(N);
-		sb.append("\tP: ");
-		sb.append(p);
-		sb.append("\tQ: ");
-		sb.append(q);
-		sb.append("\n");
-		for(int i = 0; i < N; i ++)
-		{
-			for(int j = 0; j < N; j++)
-			{
-				sb.append(Odometer.intToOdometer(board[i][j]) + " ");
-				if((j+1)%q==0 && j!= 0 && j != N-1)
-				{
-					sb.append("| ");
-				}
-			}
-			sb.append("\n");
-			if((i+1)%p == 0 && i != 0 && i != N-1)
-			{
-				for(int k = 0; k < N+p-1;k++)
-				{
-					sb.append("- ");
-				}
-				sb.append("\n");
-			}
-		}
-		return sb.toString();
-	}
-}
+package sudoku;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SudokuFile {
+	
+	/**
+	 * p, q, N represent the dimensions of a game board.
+	 * Assuming a game board has values p = 3, q = 4, N = 12, 
+	 * an empty board will look like this. 
+	 * 
+	 * [] [] [] [] | [] [] [] [] | [] [] [] []
+	 * [] [] [] [] | [] [] [] [] | [] [] [] []
+	 * [] [] [] [] | [] [] [] [] | [] [] [] []
+	 * ---------------------------------------
+	 * [] [] [] [] | [] [] [] [] | [] [] [] []
+	 * [] [] [] [] | [] [] [] [] | [] [] [] []
+	 * [] [] [] [] | [] [] [] [] | [] [] [] []
+	 * ---------------------------------------
+	 * [] [] [] [] | [] [] [] [] | [] [] [] []
+	 * [] [] [] [] | [] [] [] [] | [] [] [] []
+	 * [] [] [] [] | [] [] [] [] | [] [] [] []
+	 * ---------------------------------------
+	 * [] [] [] [] | [] [] [] [] | [] [] [] []
+	 * [] [] [] [] | [] [] [] [] | [] [] [] []
+	 * [] [] [] [] | [] [] [] [] | [] [] [] []
+	 * 
+	 */
+	private int p;//number of rows in a block && number of blocks per row
+	private int q;//number of columns in a block && number of blocks per column
+	private int N;//number of cells in a block && edge length of a NxN puzzle
+
+	
+	private int[][] board = null;
+
+	private String name;//identifies the puzzle, e.g. the file it was read from. May be null
+
+	private List<Cage> cages = new ArrayList<Cage>();//killer sudoku cages, empty for a plain sudoku
+	
+	protected SudokuFile(){}
+	
+	public SudokuFile(int N, int p, int q, int[][] board)
+	{
+		if(N != p * q || N < 1)
+		{
+			System.out.println("Board parameters invalid. Creating a 9x9 sudoku file instead.");
+			setP(3);
+			setQ(3);
+			setN(9);
+			setBoard(new int[9][9]);
+		}
+		else
+		{
+			setP(p);
+			setQ(q);
+			setN(N);
+			setBoard(board==null ? new int[N][N] : board);
+		}
+	}
+	
+	public SudokuFile(int N, int p, int q)
+	{
+		this(N,p,q,null);
+	}
+	
+	public int getP() {
+		return p;
+	}
+
+	protected void setP(int p) {
+		this.p = p;
+	}
+
+	public int getQ() {
+		return q;
+	}
+
+	protected void setQ(int q) {
+		this.q = q;
+	}
+
+	public int getN() {
+		return N;
+	}
+
+	protected void setN(int n) {
+		N = n;
+	}
+
+	public int[][] getBoard() {
+		return board;
+	}
+
+	protected void setBoard(int[][] board) {
+		this.board = board;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * @return killer sudoku cages of the puzzle, empty for a plain sudoku
+	 */
+	public List<Cage> getCages() {
+		return cages;
+	}
+
+	public void addCage(Cage cage) {
+		cages.add(cage);
+	}
+	
+	/**
+	 * Hashes N, p, q, the board and the cages with MD5. The name is not part of the hash.
+	 * @return the 128 bit hash as {high 64 bits, low 64 bits}
+	 */
+	public long[] hash128()
+	{
+		int cageInts = 0;
+		for(Cage cage : cages)
+		{
+			cageInts += 2 + 2 * cage.size();
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(4 * (3 + N * N + cageInts));
+		buffer.putInt(N).putInt(p).putInt(q);
+		for(int[] row : board)
+		{
+			for(int value : row)
+			{
+				buffer.putInt(value);
+			}
+		}
+		for(Cage cage : cages)
+		{
+			buffer.putInt(cage.getSum()).putInt(cage.size());
+			for(int cell = 0; cell < cage.size(); cell++)
+			{
+				buffer.putInt(cage.getRow(cell)).putInt(cage.getCol(cell));
+			}
+		}
+		try
+		{
+			ByteBuffer digest = ByteBuffer.wrap(MessageDigest.getInstance("MD5").digest(buffer.array()));
+			return new long[] { digest.getLong(), digest.getLong() };
+		}
+		catch(NoSuchAlgorithmException e)
+		{
+			//every Java platform is required to provide MD5
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Boards with N > 35 are written with integers instead of odometer values, 
+	 * right aligned to the width of N. 
+	 */
+	public String toString()
+	{
+		int width = Odometer.intToToken(N, N).length();
+		StringBuilder sb = new StringBuilder();
+		sb.append("N: ");
+		sb.append(N);
+		sb.append("\tP: ");
+		sb.append(p);
+		sb.append("\tQ: ");
+		sb.append(q);
+		sb.append("\n");
+		for(int i = 0; i < N; i ++)
+		{
+			for(int j = 0; j < N; j++)
+			{
+				String token = Odometer.intToToken(board[i][j], N);
+				for(int pad = token.length(); pad < width; pad++)
+				{
+					sb.append(' ');
+				}
+				sb.append(token + " ");
+				if((j+1)%q==0 && j!= 0 && j != N-1)
+				{
+					sb.append("| ");
+				}
+			}
+			sb.append("\n");
+			if((i+1)%p == 0 && i != 0 && i != N-1)
+			{
+				for(int k = 0; k < (N*(width+1)+(p-1)*2)/2;k++)
+				{
+					sb.append("- ");
+				}
+				sb.append("\n");
+			}
+		}
+		for(Cage cage : cages)
+		{
+			sb.append(cage).append("\n");
+		}
+		return sb.toString();
+	}
+}
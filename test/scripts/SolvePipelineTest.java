@@ -0,0 +1,132 @@
+package scripts;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks that SolvePipeline stops when its output is closed instead of reading and
+ * solving an endless input for nobody. Runs without a test framework:
+ * {@code java -cp bin scripts.SolvePipelineTest}, exit status 1 on failure.
+ */
+public class SolvePipelineTest {
+
+	private static final String CONFIGURATION = "MinimumRemainingValue/None/Scheduled/None";
+	private static final long LIMIT_SECONDS = 30;
+
+	public static void main(String[] args) throws Exception
+	{
+		String puzzle = new String(Files.readAllBytes(new File("ExampleSudokuFiles/PE1.txt").toPath()), StandardCharsets.UTF_8) + "\n";
+		boolean passed = closedWriterStopsRun(puzzle) & closedStdoutStopsMain(puzzle);
+		System.out.println(passed ? "PASSED" : "FAILED");
+		if(!passed)
+		{
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * run() on an endless reader and a writer that fails must throw the write error.
+	 */
+	static boolean closedWriterStopsRun(String puzzle) throws InterruptedException
+	{
+		SolvePipeline pipeline = new SolvePipeline(2, 8, Duration.ofSeconds(10), CONFIGURATION, null);
+		Writer closed = new Writer() {
+			public void write(char[] cbuf, int off, int len) throws IOException { throw new IOException("closed"); }
+			public void flush() throws IOException { throw new IOException("closed"); }
+			public void close() {}
+		};
+		Throwable[] thrown = new Throwable[1];
+		Thread thread = new Thread(() -> {
+			try
+			{
+				pipeline.run(new BufferedReader(new EndlessReader(puzzle)), closed);
+			}
+			catch(Throwable t)
+			{
+				thrown[0] = t;
+			}
+		});
+		thread.setDaemon(true);
+		thread.start();
+		thread.join(TimeUnit.SECONDS.toMillis(LIMIT_SECONDS));
+		boolean passed = !thread.isAlive() && thrown[0] instanceof IOException;
+		System.out.println((passed ? "ok " : "FAIL ") + "closed writer: " + (thread.isAlive() ? "still running" : "threw " + thrown[0]));
+		return passed;
+	}
+
+	/**
+	 * main() fed an endless stdin must exit with an error once its stdout is closed.
+	 */
+	static boolean closedStdoutStopsMain(String puzzle) throws IOException, InterruptedException
+	{
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "scripts.SolvePipeline", "-configuration", CONFIGURATION)
+			.redirectError(ProcessBuilder.Redirect.DISCARD)
+			.start();
+		Thread feeder = new Thread(() -> {
+			try(OutputStream in = process.getOutputStream())
+			{
+				byte[] bytes = puzzle.getBytes(StandardCharsets.UTF_8);
+				while(true)
+				{
+					in.write(bytes);
+				}
+			}
+			catch(IOException e)
+			{
+				//the pipeline exited
+			}
+		});
+		feeder.setDaemon(true);
+		feeder.start();
+
+		BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+		String first = out.readLine();
+		out.close();
+		boolean exited = process.waitFor(LIMIT_SECONDS, TimeUnit.SECONDS);
+		if(!exited)
+		{
+			process.destroyForcibly();
+		}
+		boolean passed = first != null && exited && process.exitValue() != 0;
+		System.out.println((passed ? "ok " : "FAIL ") + "closed stdout: " + (exited ? "exit status " + process.exitValue() : "still running after " + LIMIT_SECONDS + " s"));
+		return passed;
+	}
+
+	/**
+	 * Repeats a text forever.
+	 */
+	private static class EndlessReader extends Reader {
+
+		private final String text;
+		private int pos;
+
+		EndlessReader(String text)
+		{
+			this.text = text;
+		}
+
+		@Override
+		public int read(char[] cbuf, int off, int len)
+		{
+			int n = Math.min(len, text.length() - pos);
+			text.getChars(pos, pos + n, cbuf, off);
+			pos = (pos + n) % text.length();
+			return n;
+		}
+
+		@Override
+		public void close()
+		{
+		}
+	}
+}